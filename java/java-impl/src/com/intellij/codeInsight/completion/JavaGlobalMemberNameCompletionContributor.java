@@ -11,7 +11,7 @@ import java.util.List;
 /**
  * @author peter
  */
-public class JavaGlobalMemberNameCompletionContributor extends CompletionContributor {
+public class JavaGlobalMemberNameCompletionContributor extends CompletionContributor implements ConcurrentCompletionContributor {
 
   @Override
   public void fillCompletionVariants(CompletionParameters parameters, final CompletionResultSet result) {
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the PSI changes made outside of a given file, so that the results computed from the other files
+ * can be reused while only that file is being edited.
+ * The changes which don't belong to any file (e.g. file creation) are counted as made outside of every file.
+ */
+class OtherFilesModificationTracker extends PsiTreeChangeAdapter {
+  private static final Key<OtherFilesModificationTracker> INSTANCE_KEY = Key.create("OtherFilesModificationTracker");
+  private static final Key<AtomicLong> FILE_COUNT_KEY = Key.create("OtherFilesModificationTracker.FILE_COUNT");
+
+  private final AtomicLong myCount = new AtomicLong();
+
+  @NotNull
+  static synchronized OtherFilesModificationTracker getInstance(@NotNull Project project) {
+    OtherFilesModificationTracker tracker = project.getUserData(INSTANCE_KEY);
+    if (tracker == null) {
+      tracker = new OtherFilesModificationTracker();
+      PsiManager.getInstance(project).addPsiTreeChangeListener(tracker, project);
+      project.putUserData(INSTANCE_KEY, tracker);
+    }
+    return tracker;
+  }
+
+  long getModificationCountOutside(@NotNull PsiFile file) {
+    AtomicLong fileCount = file.getUserData(FILE_COUNT_KEY);
+    return myCount.get() - (fileCount == null ? 0 : fileCount.get());
+  }
+
+  private void changed(PsiTreeChangeEvent event) {
+    PsiFile file = event.getFile();
+    if (file != null) {
+      AtomicLong fileCount = file.getUserData(FILE_COUNT_KEY);
+      if (fileCount == null) {
+        fileCount = new AtomicLong();
+        file.putUserData(FILE_COUNT_KEY, fileCount);
+      }
+      fileCount.incrementAndGet();
+    }
+    myCount.incrementAndGet();
+  }
+
+  @Override
+  public void childAdded(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+
+  @Override
+  public void childRemoved(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+
+  @Override
+  public void childReplaced(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+
+  @Override
+  public void childMoved(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+
+  @Override
+  public void childrenChanged(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+
+  @Override
+  public void propertyChanged(PsiTreeChangeEvent event) {
+    changed(event);
+  }
+}
@@ -59,7 +59,9 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.Trinity;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.psi.*;
@@ -98,6 +100,7 @@ public class PostHighlightingPass extends TextEditorHighlightingPass {
   private final JavaCodeStyleManager myStyleManager;
   private int myCurrentEntryIndex;
   private boolean myHasMissortedImports;
+  private static final Key<Trinity<Long, Long, Boolean>> NO_USAGES_KEY = Key.create("NO_USAGES_KEY");
   private static final ImplicitUsageProvider[] ourImplicitUsageProviders = Extensions.getExtensions(ImplicitUsageProvider.EP_NAME);
   private UnusedDeclarationInspection myDeadCodeInspection;
   private UnusedSymbolLocalInspection myUnusedSymbolInspection;
@@ -604,7 +607,25 @@ public class PostHighlightingPass extends TextEditorHighlightingPass {
 
   private static boolean weAreSureThereAreNoUsages(PsiMember member, ProgressIndicator progress, GlobalUsageHelper helper) {
     if (!helper.shouldCheckUsages(member)) return false;
+    if (!helper.isCurrentFileAlreadyChecked()) return noUsagesFound(member, progress, helper);
 
+    // a usage may appear inside a code block of another file, so any change there invalidates the search result.
+    // The usages in this file are found by RefCountHolder, and only its out of code block changes (e.g. of the member signature)
+    // can affect what the other files refer to
+    Project project = member.getProject();
+    long otherFilesCount = OtherFilesModificationTracker.getInstance(project).getModificationCountOutside(member.getContainingFile());
+    long outOfCodeBlockCount = PsiManager.getInstance(project).getModificationTracker().getOutOfCodeBlockModificationCount();
+    Trinity<Long, Long, Boolean> cached = member.getUserData(NO_USAGES_KEY);
+    if (cached != null && cached.first.longValue() == otherFilesCount && cached.second.longValue() == outOfCodeBlockCount) {
+      return cached.third;
+    }
+
+    boolean noUsages = noUsagesFound(member, progress, helper);
+    member.putUserData(NO_USAGES_KEY, Trinity.create(otherFilesCount, outOfCodeBlockCount, noUsages));
+    return noUsages;
+  }
+
+  private static boolean noUsagesFound(PsiMember member, ProgressIndicator progress, GlobalUsageHelper helper) {
     String name = member.getName();
     if (name == null) return false;
     SearchScope useScope = member.getUseScope();
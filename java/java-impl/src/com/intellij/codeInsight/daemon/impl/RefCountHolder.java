@@ -16,6 +16,9 @@
 package com.intellij.codeInsight.daemon.impl;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.UserDataHolderEx;
@@ -46,6 +49,7 @@ public class RefCountHolder {
   private final Map<PsiReference, PsiImportStatementBase> myImportStatements = new ConcurrentHashMap<PsiReference, PsiImportStatementBase>();
   private final Map<PsiElement,Boolean> myPossiblyDuplicateElements = new ConcurrentHashMap<PsiElement, Boolean>();
   private final AtomicReference<State> myState = new AtomicReference<State>(State.VIRGIN);
+  private volatile ProgressIndicator myAnalyzeIndicator; // the progress of the general highlighting pass which is storing references
 
   private enum State {
     VIRGIN,                       // just created or cleared
@@ -232,11 +236,18 @@ public class RefCountHolder {
   }
 
   public boolean analyze(@NotNull PsiFile file, TextRange dirtyScope, @NotNull Runnable analyze) {
+    ProgressIndicator indicator = ProgressWrapper.unwrap(ProgressManager.getInstance().getProgressIndicator());
+    if (indicator != null && indicator == myAnalyzeIndicator && myState.get() == State.BEING_WRITTEN_BY_GHP) {
+      // general highlighting pass visits parts of the file concurrently with cloned visitors, they all store references here
+      analyze.run();
+      return true;
+    }
     myState.compareAndSet(State.READY, State.VIRGIN);
     if (!myState.compareAndSet(State.VIRGIN, State.BEING_WRITTEN_BY_GHP)) {
       return false;
     }
 
+    myAnalyzeIndicator = indicator;
     try {
       if (dirtyScope != null) {
         if (dirtyScope.equals(file.getTextRange())) {
@@ -250,6 +261,7 @@ public class RefCountHolder {
       analyze.run();
     }
     finally {
+      myAnalyzeIndicator = null;
       boolean set = myState.compareAndSet(State.BEING_WRITTEN_BY_GHP, State.READY);
       assert set : myState.get();
     }
@@ -37,7 +37,7 @@ import java.util.Collections;
 import java.util.Set;
 
 public abstract class RefJavaElementImpl extends RefElementImpl implements RefJavaElement {
-  private Set<RefClass> myOutTypeReferences;
+  private Set<RefClass> myOutTypeReferences; // singleton (to conserve the memory) or THashSet
   private static final int ACCESS_MODIFIER_MASK = 0x03;
   private static final int ACCESS_PRIVATE = 0x00;
   private static final int ACCESS_PROTECTED = 0x01;
@@ -86,7 +86,13 @@ public abstract class RefJavaElementImpl extends RefElementImpl implements RefJa
 
   public void addOutTypeRefernce(RefClass refClass){
     if (myOutTypeReferences == null){
-      myOutTypeReferences = new THashSet<RefClass>();
+      myOutTypeReferences = Collections.singleton(refClass);
+      return;
+    }
+    if (myOutTypeReferences.size() == 1) {
+      if (myOutTypeReferences.contains(refClass)) return;
+      // convert from singleton
+      myOutTypeReferences = new THashSet<RefClass>(myOutTypeReferences);
     }
     myOutTypeReferences.add(refClass);
   }
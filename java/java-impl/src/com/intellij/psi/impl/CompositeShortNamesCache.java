@@ -111,6 +111,14 @@ public class CompositeShortNamesCache extends PsiShortNamesCache {
     }
   }
 
+  @Override
+  public boolean processAllClassNames(@NotNull Processor<String> processor) {
+    for (PsiShortNamesCache cache : myCacheArray) {
+      if (!cache.processAllClassNames(processor)) return false;
+    }
+    return true;
+  }
+
   @Override
   @NotNull
   public PsiMethod[] getMethodsByName(@NotNull String name, @NotNull GlobalSearchScope scope) {
@@ -170,6 +178,14 @@ public class CompositeShortNamesCache extends PsiShortNamesCache {
     }
   }
 
+  @Override
+  public boolean processAllMethodNames(@NotNull Processor<String> processor) {
+    for (PsiShortNamesCache cache : myCacheArray) {
+      if (!cache.processAllMethodNames(processor)) return false;
+    }
+    return true;
+  }
+
   @Override
   @NotNull
   public PsiField[] getFieldsByName(@NotNull String name, @NotNull GlobalSearchScope scope) {
@@ -203,6 +219,14 @@ public class CompositeShortNamesCache extends PsiShortNamesCache {
     }
   }
 
+  @Override
+  public boolean processAllFieldNames(@NotNull Processor<String> processor) {
+    for (PsiShortNamesCache cache : myCacheArray) {
+      if (!cache.processAllFieldNames(processor)) return false;
+    }
+    return true;
+  }
+
   private static class Merger<T> {
     private T[] mySingleItem = null;
     private Set<T> myAllItems = null;
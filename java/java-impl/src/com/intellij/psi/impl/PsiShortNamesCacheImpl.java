@@ -19,7 +19,6 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.java.stubs.index.JavaFieldNameIndex;
-import com.intellij.psi.impl.java.stubs.index.JavaMethodNameIndex;
 import com.intellij.psi.impl.java.stubs.index.JavaShortClassNameIndex;
 import com.intellij.psi.impl.java.stubs.index.JavaStubIndexKeys;
 import com.intellij.psi.impl.search.JavaSourceFilterScope;
@@ -101,13 +100,19 @@ class PsiShortNamesCacheImpl extends PsiShortNamesCache {
   @Override
   @NotNull
   public String[] getAllClassNames() {
-    final Collection<String> names = JavaShortClassNameIndex.getInstance().getAllKeys(myManager.getProject());
+    List<String> names = new ArrayList<String>();
+    processAllClassNames(new CommonProcessors.CollectProcessor<String>(names));
     return ArrayUtil.toStringArray(names);
   }
 
   @Override
   public void getAllClassNames(@NotNull HashSet<String> set) {
-    set.addAll(JavaShortClassNameIndex.getInstance().getAllKeys(myManager.getProject()));
+    processAllClassNames(new CommonProcessors.CollectProcessor<String>(set));
+  }
+
+  @Override
+  public boolean processAllClassNames(@NotNull Processor<String> processor) {
+    return StubIndex.getInstance().processAllKeys(JavaStubIndexKeys.CLASS_SHORT_NAMES, myManager.getProject(), processor);
   }
 
   @Override
@@ -147,13 +152,19 @@ class PsiShortNamesCacheImpl extends PsiShortNamesCache {
   @Override
   @NotNull
   public String[] getAllMethodNames() {
-    final Collection<String> names = JavaMethodNameIndex.getInstance().getAllKeys(myManager.getProject());
+    List<String> names = new ArrayList<String>();
+    processAllMethodNames(new CommonProcessors.CollectProcessor<String>(names));
     return ArrayUtil.toStringArray(names);
   }
 
   @Override
   public void getAllMethodNames(@NotNull HashSet<String> set) {
-    set.addAll(JavaMethodNameIndex.getInstance().getAllKeys(myManager.getProject()));
+    processAllMethodNames(new CommonProcessors.CollectProcessor<String>(set));
+  }
+
+  @Override
+  public boolean processAllMethodNames(@NotNull Processor<String> processor) {
+    return StubIndex.getInstance().processAllKeys(JavaStubIndexKeys.METHODS, myManager.getProject(), processor);
   }
 
   @Override
@@ -170,13 +181,19 @@ class PsiShortNamesCacheImpl extends PsiShortNamesCache {
   @Override
   @NotNull
   public String[] getAllFieldNames() {
-    final Collection<String> names = JavaFieldNameIndex.getInstance().getAllKeys(myManager.getProject());
+    List<String> names = new ArrayList<String>();
+    processAllFieldNames(new CommonProcessors.CollectProcessor<String>(names));
     return ArrayUtil.toStringArray(names);
   }
 
   @Override
   public void getAllFieldNames(@NotNull HashSet<String> set) {
-    set.addAll(JavaFieldNameIndex.getInstance().getAllKeys(myManager.getProject()));
+    processAllFieldNames(new CommonProcessors.CollectProcessor<String>(set));
+  }
+
+  @Override
+  public boolean processAllFieldNames(@NotNull Processor<String> processor) {
+    return StubIndex.getInstance().processAllKeys(JavaStubIndexKeys.FIELDS, myManager.getProject(), processor);
   }
 
   private <T extends PsiMember> List<T> filterMembers(Collection<T> members, final GlobalSearchScope scope) {
@@ -155,6 +155,7 @@ public class JavaFileManagerImpl implements JavaFileManager, Disposable {
 
   @Override
   public PsiClass[] findClasses(@NotNull String qName, @NotNull final GlobalSearchScope scope) {
+    if (!JavaFullClassNameIndex.getInstance().mayContain(qName, myManager.getProject())) return PsiClass.EMPTY_ARRAY;
     final Collection<? extends PsiElement> classes = JavaFullClassNameIndex.getInstance().get(qName.hashCode(), myManager.getProject(), scope);
     if (classes.isEmpty()) return PsiClass.EMPTY_ARRAY;
     List<PsiClass> result = new ArrayList<PsiClass>(classes.size());
@@ -334,6 +335,8 @@ public class JavaFileManagerImpl implements JavaFileManager, Disposable {
 
   @Nullable
   private PsiClass findClassInIndex(String qName, GlobalSearchScope scope) {
+    if (!JavaFullClassNameIndex.getInstance().mayContain(qName, myManager.getProject())) return null;
+
     VirtualFile bestFile = null;
     PsiClass bestClass = null;
 
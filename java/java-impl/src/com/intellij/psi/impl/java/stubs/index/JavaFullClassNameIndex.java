@@ -24,6 +24,7 @@ import com.intellij.psi.PsiClass;
 import com.intellij.psi.impl.search.JavaSourceFilterScope;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.stubs.StubIndexKey;
 import org.jetbrains.annotations.NotNull;
 
@@ -46,4 +47,11 @@ public class JavaFullClassNameIndex extends IntStubIndexExtension<PsiClass> {
   public Collection<PsiClass> get(final Integer integer, final Project project, @NotNull final GlobalSearchScope scope) {
     return super.get(integer, project, new JavaSourceFilterScope(scope));
   }
+
+  /**
+   * @return false if there are surely no classes with this qualified name in the project, so that the index lookup can be skipped
+   */
+  public boolean mayContain(@NotNull String qName, @NotNull Project project) {
+    return StubIndex.getInstance().mayContainKey(getKey(), qName.hashCode(), project);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+// the conflicting imports are far enough apart to be split between subtrees if the import list were split
+import java.sql.Date;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+<error descr="'java.sql.Date' is already defined in a single-type import">import java.util.Date;</error>
+
+public class c {}
@@ -0,0 +1,6 @@
+
+import pack1.Derived1;
+import pack1.Base;
+
+public class Derived2 extends Base{
+}
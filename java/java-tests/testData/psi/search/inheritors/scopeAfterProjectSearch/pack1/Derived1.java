@@ -0,0 +1,4 @@
+package pack1;
+
+public class Derived1 extends Base{
+}
@@ -0,0 +1,6 @@
+package pack1;
+
+import Derived2;
+
+public class Derived3 extends Derived2{
+}
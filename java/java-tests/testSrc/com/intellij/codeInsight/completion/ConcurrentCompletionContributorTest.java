@@ -0,0 +1,127 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.completion;
+
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.extensions.ExtensionPoint;
+import com.intellij.openapi.extensions.Extensions;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.Consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentCompletionContributorTest extends LightCodeInsightFixtureTestCase {
+  private static final List<String> ourResults = Collections.synchronizedList(new ArrayList<String>());
+  private static volatile CountDownLatch ourFastFinished;
+  private static volatile boolean ourRanConcurrently;
+  private static volatile boolean ourStopSlow;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ourResults.clear();
+    ourFastFinished = new CountDownLatch(1);
+    ourRanConcurrently = false;
+    ourStopSlow = false;
+
+    registerContributor(RecordingContributor.class);
+    registerContributor(SlowContributor.class);
+    registerContributor(FastContributor.class);
+  }
+
+  public void testResultsArePassedInContributorOrder() {
+    myFixture.configureByText("a.txt", "conc<caret>");
+    myFixture.completeBasic();
+
+    assertTrue(ourRanConcurrently);
+    assertOrderedEquals(ourResults, "conc1a", "conc1b", "conc2a", "conc2b");
+    assertSameElements(myFixture.getLookupElementStrings(), "conc1a", "conc1b", "conc2a", "conc2b");
+  }
+
+  public void testStopDiscardsResultsOfFollowingContributors() {
+    ourStopSlow = true;
+    myFixture.configureByText("a.txt", "conc<caret>");
+    myFixture.completeBasic();
+
+    assertTrue(ourRanConcurrently);
+    assertOrderedEquals(ourResults, "conc1a", "conc1b");
+    assertSameElements(myFixture.getLookupElementStrings(), "conc1a", "conc1b");
+  }
+
+  private void registerContributor(Class<? extends CompletionContributor> contributor) {
+    final ExtensionPoint<CompletionContributorEP> ep = Extensions.getRootArea().getExtensionPoint("com.intellij.completion.contributor");
+    final CompletionContributorEP bean = new CompletionContributorEP();
+    bean.language = "TEXT";
+    bean.implementationClass = contributor.getName();
+    // registered one after another, the contributors are adjacent in the contributor list
+    ep.registerExtension(bean);
+    Disposer.register(getTestRootDisposable(), new Disposable() {
+      @Override
+      public void dispose() {
+        ep.unregisterExtension(bean);
+      }
+    });
+  }
+
+  public static class RecordingContributor extends CompletionContributor {
+    @Override
+    public void fillCompletionVariants(CompletionParameters parameters, final CompletionResultSet result) {
+      result.runRemainingContributors(parameters, new Consumer<CompletionResult>() {
+        @Override
+        public void consume(CompletionResult completionResult) {
+          String lookupString = completionResult.getLookupElement().getLookupString();
+          if (lookupString.startsWith("conc")) {
+            ourResults.add(lookupString);
+          }
+          result.passResult(completionResult);
+        }
+      });
+    }
+  }
+
+  public static class SlowContributor extends CompletionContributor implements ConcurrentCompletionContributor {
+    @Override
+    public void fillCompletionVariants(CompletionParameters parameters, CompletionResultSet result) {
+      result.addElement(LookupElementBuilder.create("conc1a"));
+      try {
+        // the fast contributor can only finish meanwhile if it's run in parallel
+        ourRanConcurrently = ourFastFinished.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      result.addElement(LookupElementBuilder.create("conc1b"));
+      if (ourStopSlow) {
+        result.stopHere();
+      }
+    }
+  }
+
+  public static class FastContributor extends CompletionContributor implements ConcurrentCompletionContributor {
+    @Override
+    public void fillCompletionVariants(CompletionParameters parameters, CompletionResultSet result) {
+      result.addElement(LookupElementBuilder.create("conc2a"));
+      result.addElement(LookupElementBuilder.create("conc2b"));
+      ourFastFinished.countDown();
+    }
+  }
+}
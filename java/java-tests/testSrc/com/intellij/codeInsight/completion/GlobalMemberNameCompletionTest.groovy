@@ -187,6 +187,19 @@ class A {
 '''
   }
 
+  public void testClassesAndStaticMembersTogether() {
+    myFixture.addClass("""
+package foo;
+
+public class Abcclass {
+  public static void abcmethod() {}
+}
+""")
+    myFixture.configureByText("a.java", "class Bar {{ abc<caret> }}")
+    myFixture.complete(CompletionType.CLASS_NAME)
+    assertSameElements myFixture.lookupElementStrings, 'Abcclass', 'abcmethod'
+  }
+
   private void doTest(String input, boolean importStatic, String output) {
     myFixture.configureByText("a.java", input)
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon;
+
+import com.intellij.codeInsight.daemon.impl.DaemonCodeAnalyzerImpl;
+import com.intellij.codeInsight.daemon.impl.DaemonProfiler;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.util.List;
+
+public class DaemonProfilerTest extends LightCodeInsightFixtureTestCase {
+  private static final String FILE_NAME = "Quoted,\"Name\".java";
+
+  private DaemonProfiler myProfiler;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myProfiler = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(getProject())).getProfiler();
+  }
+
+  public void testTimeline() {
+    List<DaemonProfiler.PassRecord> records = highlight();
+
+    String timeline = myProfiler.dumpTimeline();
+    List<String> lines = StringUtil.split(timeline, "\n");
+    assertEquals("Restarts: " + myProfiler.getRestartCount() + "; passes: " + records.size(), lines.get(0));
+
+    boolean generalPass = false;
+    for (DaemonProfiler.PassRecord record : records) {
+      assertFalse(record.toString(), record.isCanceled());
+      assertTrue(record.toString(), timeline.contains(record.toString()));
+      generalPass |= record.toString().startsWith("GeneralHighlightingPass ");
+    }
+    assertTrue(timeline, generalPass);
+
+    int passLines = 0;
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.startsWith("[")) {
+        passLines++;
+        // the timeline bar followed by the start time and the description of the pass
+        assertTrue(line, line.matches("\\[[ .#|]{81}\\] \\d+ms .+"));
+      }
+      else {
+        // sub-task times of the pass above
+        assertTrue(line, line.startsWith("    ") && line.endsWith("ms"));
+      }
+    }
+    assertEquals(records.size(), passLines);
+  }
+
+  public void testCsv() {
+    List<DaemonProfiler.PassRecord> records = highlight();
+
+    List<String> lines = StringUtil.split(myProfiler.dumpCsv(), "\n");
+    assertEquals(records.size() + 1, lines.size());
+    assertEquals("pass,id,file,queue wait ms,read action wait ms,run ms,apply delay ms,canceled,highlights", lines.get(0));
+    for (String line : lines.subList(1, lines.size())) {
+      // the file name contains both a comma and quotes, so it is quoted and its quotes are doubled
+      assertTrue(line, line.contains(",\"Quoted,\"\"Name\"\".java\","));
+      String[] fields = line.replace("\"Quoted,\"\"Name\"\".java\"", "file").split(",");
+      assertEquals(line, 9, fields.length);
+      assertEquals(line, "file", fields[2]);
+      assertEquals(line, "false", fields[7]);
+    }
+  }
+
+  private List<DaemonProfiler.PassRecord> highlight() {
+    RegistryValue enabled = Registry.get("daemon.profiler.enabled");
+    enabled.setValue(true);
+    try {
+      myProfiler.clear();
+      myFixture.configureByText(FILE_NAME, "class A { void f() { int unused = 0; } }");
+      myFixture.doHighlighting();
+      List<DaemonProfiler.PassRecord> records = myProfiler.getRecords();
+      assertFalse(records.isEmpty());
+      return records;
+    }
+    finally {
+      enabled.setValue(false);
+    }
+  }
+}
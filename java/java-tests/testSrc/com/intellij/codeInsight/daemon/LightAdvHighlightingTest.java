@@ -39,6 +39,8 @@ import com.intellij.openapi.extensions.ExtensionPoint;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.fileTypes.StdFileTypes;
 import com.intellij.openapi.roots.LanguageLevelProjectExtension;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.*;
@@ -179,6 +181,29 @@ public class LightAdvHighlightingTest extends LightDaemonAnalyzerTestCase {
 
   public void testXXX() throws Exception { doTest(false, false); }
   public void testUnused() throws Exception { doTest(true, false); }
+
+  public void testUnusedWithConcurrentHighlighting() throws Exception {
+    RegistryValue concurrent = Registry.get("daemon.concurrent.highlighting");
+    concurrent.setValue(true);
+    try {
+      doTest(BASE_PATH + "/Unused.java", true, false);
+    }
+    finally {
+      concurrent.setValue(false);
+    }
+  }
+
+  public void testSingleTypeImportConflictsWithConcurrentHighlighting() throws Exception {
+    RegistryValue concurrent = Registry.get("daemon.concurrent.highlighting");
+    concurrent.setValue(true);
+    try {
+      doTest(BASE_PATH + "/SingleTypeImportConflictsConcurrent.java", false, false);
+    }
+    finally {
+      concurrent.setValue(false);
+    }
+  }
+
   public void testQualifierBeforeClassName() throws Exception { doTest(false, false); }
   public void testQualifiedSuper() throws Exception { doTest(false, false); }
   public void testCastFromVoid() throws Exception { doTest(false, false); }
@@ -15,8 +15,23 @@
  */
 package com.intellij.codeInsight.daemon
 
-import com.intellij.testFramework.fixtures.JavaCodeInsightFixtureTestCase
+import com.intellij.codeInspection.LocalInspectionTool
+import com.intellij.codeInspection.ProblemsHolder
+import com.intellij.codeInspection.unusedSymbol.UnusedSymbolLocalInspection
 import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.extensions.ExtensionPointName
+import com.intellij.psi.JavaElementVisitor
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiElementVisitor
+import com.intellij.psi.PsiLiteralExpression
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.search.searches.ReferencesSearch
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.testFramework.fixtures.JavaCodeInsightFixtureTestCase
+import com.intellij.util.Processor
+import com.intellij.util.QueryExecutor
+import org.jetbrains.annotations.NotNull
 
 /**
  * @author peter
@@ -62,4 +77,123 @@ import java.lang.reflect.Modifier;
     myFixture.checkHighlighting(false, false, false)
   }
 
+  public void testElementLocalInspectionIsNotRerunOutsideOfChangedRange() {
+    def inspection = new BadLiteralInspection()
+    myFixture.enableInspections(inspection)
+    myFixture.configureByText 'a.java', '''
+class Foo {
+  void foo() {
+    String s = "bad";
+    int i<caret> = 0;
+  }
+}
+'''
+    assert myFixture.doHighlighting().findAll { it.description == 'Bad literal' }.size() == 1
+    assert inspection.visited.contains('"bad"')
+
+    inspection.visited.clear()
+    myFixture.type('j')
+    assert myFixture.doHighlighting().findAll { it.description == 'Bad literal' }.size() == 1
+    assert !inspection.visited.contains('0')
+    assert !inspection.visited.contains('"bad"')
+
+    inspection.visited.clear()
+    myFixture.editor.caretModel.moveToOffset(myFixture.editor.document.text.indexOf('0;'))
+    myFixture.type('1')
+    assert myFixture.doHighlighting().findAll { it.description == 'Bad literal' }.size() == 1
+    assert inspection.visited.contains('10')
+    assert !inspection.visited.contains('"bad"')
+  }
+
+  public void testUnusedMethodWarningDisappearsAfterUsageInAnotherFileCodeBlock() {
+    myFixture.enableInspections(new UnusedSymbolLocalInspection())
+    def user = myFixture.addClass('class User { void use(Foo foo) { } }').containingFile
+    myFixture.configureByText 'Foo.java', 'class Foo { void bar() {} }'
+    assert myFixture.doHighlighting().find { it.description?.startsWith("Method 'bar") }
+
+    def document = PsiDocumentManager.getInstance(project).getDocument(user)
+    new WriteCommandAction.Simple(project) {
+      @Override
+      protected void run() {
+        document.insertString(document.text.indexOf('{ }') + 1, 'foo.bar();')
+        PsiDocumentManager.getInstance(project).commitDocument(document)
+      }
+    }.execute()
+    DaemonCodeAnalyzer.getInstance(project).restart()
+
+    assert !myFixture.doHighlighting().find { it.description?.startsWith("Method 'bar") }
+  }
+
+  public void testUsageSearchIsNotRepeatedAfterEditInsideCodeBlock() {
+    myFixture.enableInspections(new UnusedSymbolLocalInspection())
+    // the name occurs in another file, so the usages are really searched for
+    def user = myFixture.addClass('class User { String s = "bar"; }').containingFile
+    def searches = 0
+    PlatformTestUtil.registerExtension(ExtensionPointName.create("com.intellij.referencesSearch"), { ReferencesSearch.SearchParameters p, Processor consumer ->
+      if ((p.elementToSearch as PsiNamedElement).name == 'bar') searches++
+      return true
+    } as QueryExecutor, testRootDisposable)
+
+    myFixture.configureByText 'Foo.java', 'class Foo { void bar() {} void foo() { <caret> } }'
+    assert myFixture.doHighlighting().find { it.description?.startsWith("Method 'bar") }
+    def searchCount = searches
+    assert searchCount > 0
+
+    myFixture.type('int i = 0;')
+    assert myFixture.doHighlighting().find { it.description?.startsWith("Method 'bar") }
+    assert searches == searchCount
+
+    def document = PsiDocumentManager.getInstance(project).getDocument(user)
+    new WriteCommandAction.Simple(project) {
+      @Override
+      protected void run() {
+        document.insertString(0, ' ')
+        PsiDocumentManager.getInstance(project).commitDocument(document)
+      }
+    }.execute()
+    DaemonCodeAnalyzer.getInstance(project).restart()
+    assert myFixture.doHighlighting().find { it.description?.startsWith("Method 'bar") }
+    assert searches > searchCount
+  }
+
+  private static class BadLiteralInspection extends LocalInspectionTool {
+    final Set<String> visited = Collections.synchronizedSet(new HashSet<String>())
+
+    @Override
+    boolean isElementLocal() {
+      return true
+    }
+
+    @NotNull
+    @Override
+    PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+      return new JavaElementVisitor() {
+        @Override
+        void visitLiteralExpression(PsiLiteralExpression expression) {
+          visited.add(expression.text)
+          if (expression.value == 'bad') {
+            holder.registerProblem(expression, 'Bad literal')
+          }
+        }
+      }
+    }
+
+    @NotNull
+    @Override
+    String getGroupDisplayName() {
+      return 'Test'
+    }
+
+    @NotNull
+    @Override
+    String getDisplayName() {
+      return 'Bad literal'
+    }
+
+    @NotNull
+    @Override
+    String getShortName() {
+      return 'BadLiteral'
+    }
+  }
 }
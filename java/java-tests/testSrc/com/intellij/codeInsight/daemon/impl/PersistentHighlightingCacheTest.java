@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInsight.daemon.impl.analysis.FileHighlighingSetting;
+import com.intellij.codeInsight.daemon.impl.analysis.HighlightLevelUtil;
+import com.intellij.codeInspection.redundantCast.RedundantCastInspection;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentMarkupModel;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PersistentHighlightingCacheTest extends LightCodeInsightFixtureTestCase {
+  private static final String TEXT = "class Foo {\n" +
+                                     "  void foo() {\n" +
+                                     "    int i = \"s\";\n" +
+                                     "    Object o = (Object)\"s\";\n" +
+                                     "  }\n" +
+                                     "}";
+  private PersistentHighlightingCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new PersistentHighlightingCache(getProject(), new File(FileUtil.createTempDirectory("highlights", null), "highlights"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myCache.close();
+    super.tearDown();
+  }
+
+  public void testRestoreUnchangedFile() {
+    Document document = highlightAndSave();
+    List<String> expected = getProblemDescriptions(document);
+    assertTrue(expected.toString(), expected.size() >= 2);
+
+    DocumentMarkupModel.forDocument(document, getProject(), true).removeAllHighlighters();
+    assertEmpty(getProblemDescriptions(document));
+
+    PersistentHighlightingCache.FileHighlights highlights = myCache.load(document);
+    assertNotNull(highlights);
+    myCache.apply(document, highlights);
+    assertSameElements(getProblemDescriptions(document), expected);
+  }
+
+  public void testContentChange() {
+    final Document document = highlightAndSave();
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        document.insertString(0, " ");
+      }
+    }.execute();
+    assertNull(myCache.load(document));
+  }
+
+  public void testProfileChange() {
+    Document document = highlightAndSave();
+    myFixture.disableInspections(new RedundantCastInspection());
+    assertNull(myCache.load(document));
+  }
+
+  public void testHighlightingLevelChange() {
+    Document document = highlightAndSave();
+    HighlightLevelUtil.forceRootHighlighting(myFixture.getFile(), FileHighlighingSetting.SKIP_INSPECTION);
+    try {
+      assertNull(myCache.load(document));
+    }
+    finally {
+      HighlightLevelUtil.forceRootHighlighting(myFixture.getFile(), FileHighlighingSetting.FORCE_HIGHLIGHTING);
+    }
+  }
+
+  private Document highlightAndSave() {
+    myFixture.enableInspections(new RedundantCastInspection());
+    myFixture.configureByText("Foo.java", TEXT);
+    myFixture.doHighlighting();
+    Document document = myFixture.getEditor().getDocument();
+    myCache.save(document);
+    assertNotNull(myCache.load(document));
+    return document;
+  }
+
+  private List<String> getProblemDescriptions(Document document) {
+    List<String> result = new ArrayList<String>();
+    for (HighlightInfo info : DaemonCodeAnalyzerImpl.getHighlights(document, null, getProject())) {
+      if (info.getSeverity().compareTo(HighlightSeverity.INFORMATION) > 0 && PersistentHighlightingCache.isCachedGroup(info.group)) {
+        result.add(info.description);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.redundantCast.RedundantCastInspection;
+import com.intellij.concurrency.JobSchedulerImpl;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.testFramework.InspectionTestCase;
+import org.jdom.Element;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelBatchInspectionTest extends InspectionTestCase {
+  // files are inspected in chunks of four files per core, so there are a few chunks of them
+  private static final int FILE_COUNT = JobSchedulerImpl.CORES_COUNT * 10 + 1;
+
+  public void testProblemOrderIsDeterministic() throws Exception {
+    String testDir = generateSources();
+    int expectedProblems = 0;
+    for (int i = 0; i < FILE_COUNT; i++) {
+      expectedProblems += getCastCount(i);
+    }
+
+    RegistryValue parallel = Registry.get("inspection.parallel.batch");
+    boolean wasParallel = parallel.asBoolean();
+    try {
+      parallel.setValue(false);
+      List<String> sequential = runAndExport(testDir);
+      assertEquals(expectedProblems, sequential.size());
+
+      parallel.setValue(true);
+      for (int i = 0; i < 3; i++) {
+        assertEquals(sequential, runAndExport(testDir));
+      }
+    }
+    finally {
+      parallel.setValue(wasParallel);
+    }
+  }
+
+  // files with different numbers of problems
+  private String generateSources() throws Exception {
+    File dir = createTempDirectory(false);
+    for (int i = 0; i < FILE_COUNT; i++) {
+      StringBuilder text = new StringBuilder();
+      text.append("class C").append(i).append(" {\n");
+      text.append("  void f(String s) {\n");
+      for (int j = 0; j < getCastCount(i); j++) {
+        text.append("    String t").append(j).append(" = (String)s;\n");
+      }
+      text.append("  }\n");
+      text.append("}\n");
+      FileUtil.writeToFile(new File(dir, "src/C" + i + ".java"), text.toString());
+    }
+    return dir.getPath();
+  }
+
+  private static int getCastCount(int fileIndex) {
+    return fileIndex % 4 + 1;
+  }
+
+  // all the problems in the order they are exported
+  private List<String> runAndExport(String testDir) {
+    LocalInspectionToolWrapper tool = new LocalInspectionToolWrapper(new RedundantCastInspection());
+    runTool(testDir, "java 1.5", tool);
+
+    Element root = new Element("problems");
+    tool.exportResults(root);
+    List<String> result = new ArrayList<String>();
+    for (Object o : root.getChildren("problem")) {
+      Element problem = (Element)o;
+      result.add(problem.getChildText("file") + ":" + problem.getChildText("line") + ": " + problem.getChildText("description"));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefElementImpl;
+import com.intellij.codeInspection.reference.RefManagerImpl;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RefElementReferencesTest extends LightCodeInsightFixtureTestCase {
+  public void testAddAndRemoveReferences() {
+    PsiClass aClass = myFixture.addClass("class Foo { void target() {} void a() {} void b() {} void c() {} void d() {} void e() {} }");
+    GlobalInspectionContextImpl context = ((InspectionManagerEx)InspectionManager.getInstance(getProject())).createNewGlobalContext(false);
+    RefManagerImpl refManager = new RefManagerImpl(getProject(), new AnalysisScope(aClass.getContainingFile()), context);
+    try {
+      PsiMethod[] methods = aClass.getMethods();
+      RefElementImpl target = (RefElementImpl)refManager.getReference(methods[0]);
+      assertNotNull(target);
+      assertEmpty(target.getInReferences());
+
+      List<RefElement> callers = new ArrayList<RefElement>();
+      for (int i = 1; i < methods.length; i++) {
+        RefElementImpl caller = (RefElementImpl)refManager.getReference(methods[i]);
+        assertNotNull(caller);
+        caller.addOutReference(target);
+        target.addInReference(caller);
+        target.addInReference(caller);
+        callers.add(caller);
+        assertOrderedEquals(target.getInReferences(), callers);
+        assertOrderedEquals(caller.getOutReferences(), target);
+      }
+
+      removeCaller(target, callers, 2);
+      removeCaller(target, callers, 0);
+      removeCaller(target, callers, callers.size() - 1);
+      removeCaller(target, callers, 1);
+      assertEquals(1, callers.size());
+      removeCaller(target, callers, 0);
+      assertEmpty(target.getInReferences());
+
+      RefElementImpl caller = (RefElementImpl)refManager.getReference(methods[1]);
+      target.addInReference(caller);
+      assertOrderedEquals(target.getInReferences(), caller);
+    }
+    finally {
+      refManager.cleanup();
+    }
+  }
+
+  private static void removeCaller(RefElementImpl target, List<RefElement> callers, int index) {
+    RefElement caller = callers.remove(index);
+    ((RefElementImpl)caller).referenceRemoved();
+    assertOrderedEquals(target.getInReferences(), callers);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.lang;
+
+import com.intellij.openapi.application.ex.PathManagerEx;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.LightIdeaTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+
+import java.io.File;
+
+/**
+ * Full file parsing throughput, i.e. lexing, PsiBuilder markers and the AST built from them.
+ */
+public class ParsingPerformanceTest extends LightIdeaTestCase {
+  public void testJava() throws Exception {
+    String text = FileUtil.loadFile(new File(PathManagerEx.getTestDataPath() + "/psi/stub/StubPerformanceTest.java"));
+    doTest("test.java", text, 1500);
+  }
+
+  public void testXml() throws Exception {
+    StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n");
+    for (int i = 0; i < 5000; i++) {
+      sb.append("  <item id=\"").append(i).append("\" name=\"item").append(i).append("\">\n");
+      sb.append("    <!-- item ").append(i).append(" -->\n");
+      sb.append("    <value type=\"int\">").append(i * 31).append("</value>\n");
+      sb.append("    <empty/>\n");
+      sb.append("  </item>\n");
+    }
+    sb.append("</root>\n");
+    doTest("test.xml", sb.toString(), 2000);
+  }
+
+  private static void doTest(final String fileName, final String text, int expectedMs) {
+    PlatformTestUtil.startPerformanceTest("Parsing " + fileName + " of size " + text.length(), expectedMs, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        for (int i = 0; i < 5; i++) {
+          PsiFile file = createLightFile(fileName, text);
+          assertNotNull(file.getNode().getFirstChildNode());
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.resolve;
+
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResolveCacheTest extends LightCodeInsightFixtureTestCase {
+  private static final int MAX_SIZE = 8;
+  private static final int COLD_COUNT = 100;
+
+  public void testResultsNotRequestedRecentlyAreEvicted() {
+    RegistryValue maxSize = Registry.get("resolve.cache.max.size");
+    maxSize.setValue(MAX_SIZE);
+    try {
+      ResolveCache cache = new ResolveCache(null);
+      CountingResolver resolver = new CountingResolver();
+      PsiReference hot = createReference("hot");
+      List<PsiReference> cold = new ArrayList<PsiReference>();
+      for (int i = 0; i < COLD_COUNT; i++) {
+        cache.resolveWithCaching(hot, resolver, false, false);
+        PsiReference reference = createReference("cold" + i);
+        cold.add(reference);
+        cache.resolveWithCaching(reference, resolver, false, false);
+      }
+      assertEquals(1, resolver.myCounts.get(hot));
+
+      int evicted = 0;
+      for (PsiReference reference : cold) {
+        cache.resolveWithCaching(reference, resolver, false, false);
+        if (resolver.myCounts.get(reference) > 1) evicted++;
+      }
+      assertTrue(String.valueOf(evicted), evicted >= COLD_COUNT - MAX_SIZE);
+    }
+    finally {
+      maxSize.resetToDefault();
+    }
+  }
+
+  public void testNothingIsEvictedWithoutLimit() {
+    ResolveCache cache = new ResolveCache(null);
+    CountingResolver resolver = new CountingResolver();
+    List<PsiReference> references = new ArrayList<PsiReference>();
+    for (int i = 0; i < COLD_COUNT; i++) {
+      PsiReference reference = createReference("ref" + i);
+      references.add(reference);
+      cache.resolveWithCaching(reference, resolver, false, false);
+    }
+    for (PsiReference reference : references) {
+      cache.resolveWithCaching(reference, resolver, false, false);
+      assertEquals(1, resolver.myCounts.get(reference));
+    }
+  }
+
+  public void testStatistics() {
+    RegistryValue statistics = Registry.get("resolve.cache.statistics");
+    statistics.setValue(true);
+    try {
+      ResolveCache cache = new ResolveCache(null);
+      PsiReference reference = createReference("ref");
+      CountingResolver resolver = new CountingResolver();
+      cache.resolveWithCaching(reference, resolver, false, false);
+      cache.resolveWithCaching(reference, resolver, false, false);
+      assertTrue(cache.getStatistics(), cache.getStatistics().contains("hits=1; misses=1"));
+    }
+    finally {
+      statistics.resetToDefault();
+    }
+  }
+
+  private PsiReference createReference(String name) {
+    return (PsiReference)JavaPsiFacade.getElementFactory(getProject()).createExpressionFromText(name, null);
+  }
+
+  private static class CountingResolver implements ResolveCache.Resolver {
+    private final TObjectIntHashMap<PsiReference> myCounts = new TObjectIntHashMap<PsiReference>();
+
+    @Override
+    public PsiElement resolve(PsiReference ref, boolean incompleteCode) {
+      myCounts.put(ref, myCounts.get(ref) + 1);
+      return ref.getElement();
+    }
+  }
+}
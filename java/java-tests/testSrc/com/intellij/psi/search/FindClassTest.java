@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.search;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.impl.java.stubs.index.JavaStubIndexKeys;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexImpl;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.indexing.FileBasedIndex;
+import gnu.trove.TIntArrayList;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+public class FindClassTest extends LightCodeInsightFixtureTestCase {
+  public void testClassAddedAfterMiss() {
+    JavaPsiFacade facade = JavaPsiFacade.getInstance(getProject());
+    GlobalSearchScope scope = GlobalSearchScope.allScope(getProject());
+    assertNull(facade.findClass("foo.FindClassLater", scope));
+    assertEquals(0, facade.findClasses("foo.FindClassLater", scope).length);
+
+    myFixture.addClass("package foo; public class FindClassLater {}");
+    assertNotNull(facade.findClass("foo.FindClassLater", scope));
+    assertEquals(1, facade.findClasses("foo.FindClassLater", scope).length);
+    assertNull(facade.findClass("foo.FindClassNever", scope));
+  }
+
+  public void testKeyFilterRegisteredDuringUpdate() throws Exception {
+    final StubIndexImpl stubIndex = (StubIndexImpl)StubIndex.getInstance();
+    int fileId = FileBasedIndex.getFileId(myFixture.addClass("class FilterRace {}").getContainingFile().getVirtualFile());
+    final String key = "FilterRaceAnnotation";
+    Map<String, TIntArrayList> values = Collections.singletonMap(key, new TIntArrayList(new int[]{1}));
+    Map<String, TIntArrayList> noValues = Collections.emptyMap();
+    // make sure the query below doesn't need to index anything
+    assertTrue(stubIndex.mayContainKey(JavaStubIndexKeys.CLASS_FQN, "FilterRace".hashCode(), getProject()));
+
+    final AtomicBoolean mayContain = new AtomicBoolean();
+    Thread query = new Thread("filter race query") {
+      @Override
+      public void run() {
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+          @Override
+          public void run() {
+            mayContain.set(stubIndex.mayContainKey(JavaStubIndexKeys.ANNOTATIONS, key, getProject()));
+          }
+        });
+      }
+    };
+    Lock lock = stubIndex.getWriteLock(JavaStubIndexKeys.ANNOTATIONS);
+    lock.lock();
+    try {
+      // the filter is requested while an update is in progress
+      query.start();
+      while (query.getState() != Thread.State.WAITING) {
+        assertTrue(query.isAlive());
+        Thread.sleep(10);
+      }
+      stubIndex.updateIndex(JavaStubIndexKeys.ANNOTATIONS, fileId, noValues, values);
+    }
+    finally {
+      lock.unlock();
+    }
+    query.join();
+
+    try {
+      assertTrue(mayContain.get());
+      assertTrue(stubIndex.mayContainKey(JavaStubIndexKeys.ANNOTATIONS, key, getProject()));
+    }
+    finally {
+      stubIndex.updateIndex(JavaStubIndexKeys.ANNOTATIONS, fileId, values, noValues);
+    }
+  }
+}
@@ -30,6 +30,11 @@ public class InheritorsTest extends PsiTestCase{
     doTest("pack1.Base", "pack1", true, "pack1.Derived1", "pack1.Derived3");
   }
 
+  public void testScopeAfterProjectSearch() throws Exception {
+    doTest("pack1.Base", "", true, "pack1.Derived1", "Derived2", "pack1.Derived3");
+    doTest("pack1.Base", "pack1", true, "pack1.Derived1", "pack1.Derived3");
+  }
+
   public void testNoScanJdk() throws Exception {
     doTest("javax.swing.JPanel", "", false);
   }
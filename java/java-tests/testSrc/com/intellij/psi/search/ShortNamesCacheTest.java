@@ -0,0 +1,47 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.search;
+
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.containers.HashSet;
+
+import java.util.Arrays;
+
+public class ShortNamesCacheTest extends LightCodeInsightFixtureTestCase {
+  public void testNamesAddedAfterFirstRequest() {
+    myFixture.addClass("class FirstNamesCacheClass { void firstNamesCacheMethod() {} int firstNamesCacheField; }");
+    PsiShortNamesCache cache = PsiShortNamesCache.getInstance(getProject());
+    assertTrue(Arrays.asList(cache.getAllClassNames()).contains("FirstNamesCacheClass"));
+
+    myFixture.addClass("class SecondNamesCacheClass { void secondNamesCacheMethod() {} int secondNamesCacheField; }");
+    assertTrue(Arrays.asList(cache.getAllClassNames()).contains("SecondNamesCacheClass"));
+
+    HashSet<String> methods = new HashSet<String>();
+    cache.getAllMethodNames(methods);
+    assertTrue(methods.contains("firstNamesCacheMethod"));
+    assertTrue(methods.contains("secondNamesCacheMethod"));
+
+    CommonProcessors.FindProcessor<String> findField = new CommonProcessors.FindProcessor<String>() {
+      @Override
+      protected boolean accept(String name) {
+        return "secondNamesCacheField".equals(name);
+      }
+    };
+    assertFalse(cache.processAllFieldNames(findField));
+    assertTrue(findField.isFound());
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.stubs;
+
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.impl.source.JavaLightStubBuilder;
+import com.intellij.testFramework.LightIdeaTestCase;
+import com.intellij.util.io.UnsyncByteArrayInputStream;
+
+import java.util.List;
+
+public class LazyStubLoaderTest extends LightIdeaTestCase {
+  private static final String TEXT = "package p;\n" +
+                                     "import java.util.List;\n" +
+                                     "class A { int f; void m(int p) { } class Inner { void n() { } } }\n" +
+                                     "class B { List<String> g; void m(String s, int i) { } }\n" +
+                                     "interface C { void m(); }";
+
+  public void testLazyTreeIsSameAsSerialized() {
+    StubElement stub = buildStub();
+    BufferExposingByteArrayOutputStream bytes = serialize(stub);
+
+    StubElement eager = SerializationManager.getInstance().deserialize(new UnsyncByteArrayInputStream(bytes.getInternalBuffer(), 0, bytes.size()));
+    StubElement lazy = SerializationManager.getInstance().deserializeLazily(bytes.getInternalBuffer(), bytes.size());
+    assertEquals(DebugUtil.stubTreeToString(stub), DebugUtil.stubTreeToString(eager));
+    assertEquals(DebugUtil.stubTreeToString(stub), DebugUtil.stubTreeToString(lazy));
+  }
+
+  public void testChildrenAreLoadedOnDemand() {
+    BufferExposingByteArrayOutputStream bytes = serialize(buildStub());
+    StubBase root = (StubBase)SerializationManager.getInstance().deserializeLazily(bytes.getInternalBuffer(), bytes.size());
+    assertNotNull(root.getChildrenLoader());
+
+    List<StubElement> classes = root.getChildrenStubs();
+    assertNull(root.getChildrenLoader());
+    // the import list and the classes
+    assertEquals(4, classes.size());
+    for (StubElement child : classes) {
+      assertNotNull(child.toString(), ((StubBase)child).getChildrenLoader());
+    }
+
+    StubBase classB = (StubBase)classes.get(2);
+    assertFalse(classB.getChildrenStubs().isEmpty());
+    assertNull(classB.getChildrenLoader());
+    assertNotNull(((StubBase)classes.get(1)).getChildrenLoader());
+    assertNotNull(((StubBase)classes.get(3)).getChildrenLoader());
+  }
+
+  public void testPlainList() {
+    StubElement stub = buildStub();
+    BufferExposingByteArrayOutputStream bytes = serialize(stub);
+    List<StubElement<?>> expected = new StubTree((PsiFileStub)stub).getPlainList();
+
+    PsiFileStub lazy = (PsiFileStub)SerializationManager.getInstance().deserializeLazily(bytes.getInternalBuffer(), bytes.size());
+    List<StubElement<?>> plainList = new StubTree(lazy).getPlainList();
+    assertEquals(expected.size(), plainList.size());
+
+    // from the last stub to the first one, so that the stubs are requested before their parents are loaded
+    for (int i = plainList.size() - 1; i >= 0; i--) {
+      StubElement<?> element = plainList.get(i);
+      assertEquals(i, ((StubBase)element).id);
+      assertEquals(expected.get(i).toString(), element.toString());
+      assertSame(element, plainList.get(i));
+    }
+  }
+
+  private static StubElement buildStub() {
+    PsiFile file = createLightFile("A.java", TEXT);
+    return new JavaLightStubBuilder().buildStubTree(file);
+  }
+
+  private static BufferExposingByteArrayOutputStream serialize(StubElement stub) {
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    SerializationManager.getInstance().serialize(stub, bytes);
+    return bytes;
+  }
+}
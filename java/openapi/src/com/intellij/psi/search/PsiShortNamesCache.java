@@ -21,6 +21,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -92,6 +93,17 @@ public abstract class PsiShortNamesCache {
    */
   public abstract void getAllClassNames(@NotNull HashSet<String> dest);
 
+  /**
+   * Processes the names of all classes in the project and (optionally) libraries without collecting them.
+   * The same name may be reported more than once.
+   *
+   * @param processor the processor to pass the names to.
+   * @return false if the processor stopped the processing.
+   */
+  public boolean processAllClassNames(@NotNull Processor<String> processor) {
+    return ContainerUtil.process(getAllClassNames(), processor);
+  }
+
   /**
    * Returns the list of all methods with the specified name in the specified scope.
    *
@@ -124,6 +136,17 @@ public abstract class PsiShortNamesCache {
    */
   public abstract void getAllMethodNames(@NotNull HashSet<String> set);
 
+  /**
+   * Processes the names of all methods in the project and (optionally) libraries without collecting them.
+   * The same name may be reported more than once.
+   *
+   * @param processor the processor to pass the names to.
+   * @return false if the processor stopped the processing.
+   */
+  public boolean processAllMethodNames(@NotNull Processor<String> processor) {
+    return ContainerUtil.process(getAllMethodNames(), processor);
+  }
+
   /**
    * Returns the list of all fields with the specified name in the specified scope.
    *
@@ -150,4 +173,15 @@ public abstract class PsiShortNamesCache {
    * @param set the set to add the names to.
    */
   public abstract void getAllFieldNames(@NotNull HashSet<String> set);
+
+  /**
+   * Processes the names of all fields in the project and (optionally) libraries without collecting them.
+   * The same name may be reported more than once.
+   *
+   * @param processor the processor to pass the names to.
+   * @return false if the processor stopped the processing.
+   */
+  public boolean processAllFieldNames(@NotNull Processor<String> processor) {
+    return ContainerUtil.process(getAllFieldNames(), processor);
+  }
 }
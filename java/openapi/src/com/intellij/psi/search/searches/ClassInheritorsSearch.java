@@ -21,6 +21,7 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.Ref;
 import com.intellij.psi.*;
@@ -37,6 +38,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -46,6 +49,8 @@ public class ClassInheritorsSearch extends ExtensibleQueryFactory<PsiClass, Clas
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.search.searches.ClassInheritorsSearch");
 
   public static final ClassInheritorsSearch INSTANCE = new ClassInheritorsSearch();
+  // all deep inheritors of the class in the whole project, including anonymous ones, valid until the next java structure change
+  private static final Key<SoftReference<Pair<Long, List<PsiClass>>>> INHERITORS_CACHE = Key.create("ClassInheritorsSearch.INHERITORS_CACHE");
 
   static {
     INSTANCE.registerExecutor(new QueryExecutor<PsiClass, SearchParameters>() {
@@ -184,6 +189,28 @@ public class ClassInheritorsSearch extends ExtensibleQueryFactory<PsiClass, Clas
       });
     }
 
+    final boolean cacheable = parameters.isCheckDeep() && parameters.isCheckInheritance();
+    if (cacheable) {
+      List<PsiClass> cached = getCachedInheritors(baseClass);
+      if (cached != null) {
+        for (final PsiClass candidate : cached) {
+          ProgressManager.checkCanceled();
+          if (!parameters.isIncludeAnonymous() && candidate instanceof PsiAnonymousClass) continue;
+          boolean result = ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+            @Override
+            public Boolean compute() {
+              return !candidate.isValid() || processIfInScope(consumer, candidate, searchScope, parameters);
+            }
+          }).booleanValue();
+          if (!result) return false;
+        }
+        return true;
+      }
+    }
+    // the whole hierarchy is walked anyway, so remember it for the next searches in any scope
+    final List<PsiClass> inheritors = cacheable && parameters.isIncludeAnonymous() ? new ArrayList<PsiClass>() : null;
+    final long modificationCount = baseClass.getManager().getModificationTracker().getJavaStructureModificationCount();
+
     final Ref<PsiClass> currentBase = Ref.create(null);
     final Stack<Pair<Reference<PsiClass>, String>> stack = new Stack<Pair<Reference<PsiClass>, String>>();
     // there are two sets for memory optimization: it's cheaper to hold FQN than PsiClass
@@ -208,15 +235,10 @@ public class ClassInheritorsSearch extends ExtensibleQueryFactory<PsiClass, Clas
               }
             }
 
-            if (PsiSearchScopeUtil.isInScope(searchScope, candidate)) {
-              if (candidate instanceof PsiAnonymousClass) {
-                result.set(consumer.process(candidate));
-              }
-              else {
-                final String name = candidate.getName();
-                if (name != null && parameters.getNameCondition().value(name) && !consumer.process(candidate)) result.set(false);
-              }
+            if (inheritors != null) {
+              inheritors.add(candidate);
             }
+            if (!processIfInScope(consumer, candidate, searchScope, parameters)) result.set(false);
           }
         });
         if (!result.isNull()) return result.get().booleanValue();
@@ -257,9 +279,34 @@ public class ClassInheritorsSearch extends ExtensibleQueryFactory<PsiClass, Clas
       currentBase.set(psiClass);
       if (!DirectClassInheritorsSearch.search(psiClass, projectScope, parameters.isIncludeAnonymous(), false).forEach(processor)) return false;
     }
+    if (inheritors != null && baseClass.getManager().getModificationTracker().getJavaStructureModificationCount() == modificationCount) {
+      baseClass.putUserData(INHERITORS_CACHE, new SoftReference<Pair<Long, List<PsiClass>>>(Pair.create(modificationCount, inheritors)));
+    }
     return true;
   }
 
+  private static boolean processIfInScope(@NotNull Processor<PsiClass> consumer,
+                                          @NotNull PsiClass candidate,
+                                          @NotNull SearchScope searchScope,
+                                          @NotNull SearchParameters parameters) {
+    if (!PsiSearchScopeUtil.isInScope(searchScope, candidate)) return true;
+    if (candidate instanceof PsiAnonymousClass) {
+      return consumer.process(candidate);
+    }
+    final String name = candidate.getName();
+    return name == null || !parameters.getNameCondition().value(name) || consumer.process(candidate);
+  }
+
+  @Nullable
+  private static List<PsiClass> getCachedInheritors(@NotNull PsiClass baseClass) {
+    SoftReference<Pair<Long, List<PsiClass>>> ref = baseClass.getUserData(INHERITORS_CACHE);
+    Pair<Long, List<PsiClass>> data = ref == null ? null : ref.get();
+    if (data == null || data.getFirst() != baseClass.getManager().getModificationTracker().getJavaStructureModificationCount()) {
+      return null;
+    }
+    return data.getSecond();
+  }
+
   private static Reference<PsiClass> createHardReference(final PsiClass candidate) {
     return new SoftReference<PsiClass>(candidate){
       @Override
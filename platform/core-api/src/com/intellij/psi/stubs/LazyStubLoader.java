@@ -0,0 +1,166 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.stubs;
+
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.PersistentStringEnumerator;
+import com.intellij.util.io.UnsyncByteArrayInputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deserializes a stub tree written by {@link SerializationManager} on demand.
+ * <p/>
+ * The serialized tree starts with the number of stubs followed by a table holding the offset of the data of each stub and the number
+ * of its descendants, in the depth-first order of the stubs which is also the order of their ids. The children of a stub are
+ * deserialized when they are requested for the first time, without reading the data of any other stub.
+ */
+abstract class LazyStubLoader {
+  private static final int TABLE_ENTRY_SIZE = 8;
+
+  private final byte[] myBytes;
+  private final int myStubCount;
+  private final int myDataStart;
+  private final AtomicReferenceArray<StubElement> myStubs;
+
+  // guarded by this
+  private final UnsyncByteArrayInputStream myInput;
+  private final StubInputStream myStream;
+  private StubElement myLoadingStub;
+
+  LazyStubLoader(@NotNull byte[] bytes, int length, @NotNull PersistentStringEnumerator nameStorage) {
+    myBytes = bytes;
+    myStubCount = readInt(0);
+    myDataStart = 4 + myStubCount * TABLE_ENTRY_SIZE;
+    myStubs = new AtomicReferenceArray<StubElement>(myStubCount);
+    myInput = new UnsyncByteArrayInputStream(bytes, 0, length);
+    myStream = new StubInputStream(myInput, nameStorage);
+  }
+
+  @Nullable
+  protected abstract StubSerializer getSerializer(int id);
+
+  protected abstract void onReadError(@NotNull IOException e);
+
+  @NotNull
+  synchronized StubElement loadRoot() throws IOException {
+    return load(0, null);
+  }
+
+  void loadAll(@NotNull StubElement stub) {
+    for (StubElement child : (List<StubElement>)stub.getChildrenStubs()) {
+      loadAll(child);
+    }
+  }
+
+  @NotNull
+  List<StubElement<?>> getPlainList() {
+    return new AbstractList<StubElement<?>>() {
+      @Override
+      public StubElement<?> get(int index) {
+        return getStub(index);
+      }
+
+      @Override
+      public int size() {
+        return myStubCount;
+      }
+    };
+  }
+
+  @NotNull
+  private StubElement getStub(int id) {
+    StubElement stub = myStubs.get(id);
+    if (stub != null) return stub;
+
+    // the ids of the children are ascending, descend to the last child whose id isn't greater than the requested one
+    stub = myStubs.get(0);
+    while (((StubBase)stub).id != id) {
+      List<StubElement> children = stub.getChildrenStubs();
+      int low = 0;
+      int high = children.size() - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (((StubBase)children.get(mid)).id <= id) {
+          low = mid;
+        }
+        else {
+          high = mid - 1;
+        }
+      }
+      stub = children.get(low);
+    }
+    return stub;
+  }
+
+  synchronized void loadChildren(@NotNull StubBase parent) {
+    // a serializer may look at the children of other stubs while the stream is positioned in the middle of a stub,
+    // they're left as they are until the serializer is done
+    if (parent.getChildrenLoader() != this || myLoadingStub != null) return;
+
+    myLoadingStub = parent;
+    try {
+      int end = parent.id + getDescendantCount(parent.id);
+      for (int child = parent.id + 1; child <= end; child += getDescendantCount(child) + 1) {
+        load(child, parent);
+      }
+      parent.setChildrenLoader(null);
+    }
+    catch (IOException e) {
+      onReadError(e);
+      throw new RuntimeException(e);
+    }
+    finally {
+      myLoadingStub = null;
+    }
+  }
+
+  @NotNull
+  private StubElement load(int id, @Nullable StubElement parent) throws IOException {
+    // the stream is marked at the start of the bytes
+    myInput.reset();
+    myInput.skip(myDataStart + getOffset(id));
+
+    final int serializerId = DataInputOutputUtil.readINT(myStream);
+    final StubSerializer serializer = getSerializer(serializerId);
+    assert serializer != null : "No serializer registered for stub: ID=" + serializerId + "; parent stub class=" + (parent != null? parent.getClass().getName() : "null");
+
+    StubBase stub = (StubBase)serializer.deserialize(myStream, parent);
+    stub.id = id;
+    if (getDescendantCount(id) > 0) {
+      stub.setChildrenLoader(this);
+    }
+    myStubs.set(id, stub);
+    return stub;
+  }
+
+  private int getOffset(int id) {
+    return readInt(4 + id * TABLE_ENTRY_SIZE);
+  }
+
+  private int getDescendantCount(int id) {
+    return readInt(4 + id * TABLE_ENTRY_SIZE + 4);
+  }
+
+  private int readInt(int offset) {
+    return (myBytes[offset] & 0xFF) << 24 | (myBytes[offset + 1] & 0xFF) << 16 | (myBytes[offset + 2] & 0xFF) << 8 | myBytes[offset + 3] & 0xFF;
+  }
+}
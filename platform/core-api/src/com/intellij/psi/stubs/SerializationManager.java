@@ -36,6 +36,11 @@ public abstract class SerializationManager {
 
   public abstract StubElement deserialize(InputStream stream);
 
+  /**
+   * Deserializes the root of the stub tree, the children of every stub are deserialized when they're requested for the first time.
+   */
+  public abstract StubElement deserializeLazily(byte[] bytes, int length);
+
   public abstract StubSerializer getSerializer(StubElement rootStub);
 
   public abstract boolean isNameStorageCorrupted();
@@ -37,6 +37,7 @@ public abstract class StubBase<T extends PsiElement> extends UserDataHolderBase
   private final List<StubElement> myChildren = new SmartList<StubElement>();
   private final IStubElementType myElementType;
   private volatile T myPsi;
+  private volatile LazyStubLoader myChildrenLoader;
   public int id;
 
   protected StubBase(final StubElement parent, final IStubElementType elementType) {
@@ -54,9 +55,22 @@ public abstract class StubBase<T extends PsiElement> extends UserDataHolderBase
 
   @Override
   public List<StubElement> getChildrenStubs() {
+    LazyStubLoader loader = myChildrenLoader;
+    if (loader != null) {
+      loader.loadChildren(this);
+    }
     return myChildren;
   }
 
+  @Nullable
+  LazyStubLoader getChildrenLoader() {
+    return myChildrenLoader;
+  }
+
+  void setChildrenLoader(@Nullable LazyStubLoader loader) {
+    myChildrenLoader = loader;
+  }
+
   @Override
   @Nullable
   public <P extends PsiElement> StubElement<P> findChildStubByType(final IStubElementType<?, P> elementType) {
@@ -48,11 +48,11 @@ import com.intellij.util.diff.DiffTreeChangeBuilder;
 import com.intellij.util.diff.FlyweightCapableTreeStructure;
 import com.intellij.util.diff.ShallowNodeComparator;
 import com.intellij.util.text.CharArrayUtil;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
@@ -75,7 +75,11 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private IElementType[] myLexTypes;
   private int myCurrentLexeme;
 
-  private final MyList myProduction = new MyList();
+  // start markers and error items are recorded by their ids (indices in myMarkers), done markers by the inverted ids of their starts
+  private final TIntArrayList myProduction = new TIntArrayList(256);
+  private final List<ProductionMarker> myMarkers = new ArrayList<ProductionMarker>(256);
+  // slots of myMarkers released by dropped and rolled back markers, reused by the markers registered later
+  private final TIntArrayList myFreeIds = new TIntArrayList();
 
   private final Lexer myLexer;
   private final TokenSet myWhitespaces;
@@ -109,18 +113,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
   });
 
-  private final LimitedPool<DoneMarker> DONE_MARKERS = new LimitedPool<DoneMarker>(2000, new LimitedPool.ObjectFactory<DoneMarker>() {
-    @Override
-    public DoneMarker create() {
-      return new DoneMarker();
-    }
-
-    @Override
-    public void cleanup(final DoneMarker doneMarker) {
-      doneMarker.clean();
-    }
-  });
-
   private static final WhitespacesAndCommentsBinder DEFAULT_LEFT_EDGE_TOKEN_BINDER = new WhitespacesAndCommentsBinder() {
     @Override
     public int getEdgePosition(final List<IElementType> tokens, final boolean atStreamEdge, final TokenTextGetter getter) {
@@ -255,13 +247,56 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   public LighterASTNode getLatestDoneMarker() {
     int index = myProduction.size() - 1;
     while (index >= 0) {
-      ProductionMarker marker = myProduction.get(index);
-      if (marker instanceof DoneMarker) return ((DoneMarker)marker).myStart;
+      int id = myProduction.getQuick(index);
+      if (id < 0) return myMarkers.get(~id);
       --index;
     }
     return null;
   }
 
+  private int registerMarker(@NotNull ProductionMarker marker) {
+    if (!myFreeIds.isEmpty()) {
+      int id = myFreeIds.remove(myFreeIds.size() - 1);
+      myMarkers.set(id, marker);
+      return id;
+    }
+    int id = myMarkers.size();
+    myMarkers.add(marker);
+    return id;
+  }
+
+  private void releaseId(int id) {
+    if (id == myMarkers.size() - 1) {
+      myMarkers.remove(id);
+    }
+    else {
+      myMarkers.set(id, null);
+      myFreeIds.add(id);
+    }
+  }
+
+  private void recycleMarker(@NotNull StartMarker marker) {
+    releaseId(marker.myId);
+    START_MARKERS.recycle(marker);
+  }
+
+  private int getLexemeIndex(int id) {
+    return id >= 0 ? myMarkers.get(id).myLexemeIndex : ((StartMarker)myMarkers.get(~id)).myDoneLexemeIndex;
+  }
+
+  private void setLexemeIndex(int id, int lexemeIndex) {
+    if (id >= 0) {
+      myMarkers.get(id).myLexemeIndex = lexemeIndex;
+    }
+    else {
+      ((StartMarker)myMarkers.get(~id)).myDoneLexemeIndex = lexemeIndex;
+    }
+  }
+
+  private WhitespacesAndCommentsBinder getEdgeTokenBinder(int id) {
+    return id >= 0 ? myMarkers.get(id).myEdgeTokenBinder : ((StartMarker)myMarkers.get(~id)).myDoneEdgeTokenBinder;
+  }
+
   private abstract static class Node implements LighterASTNode {
     public abstract int hc();
   }
@@ -272,6 +307,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   }
 
   public abstract static class ProductionMarker extends Node {
+    protected int myId;
     protected int myLexemeIndex;
     protected WhitespacesAndCommentsBinder myEdgeTokenBinder;
     protected ProductionMarker myParent;
@@ -290,7 +326,11 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private static class StartMarker extends ProductionMarker implements Marker {
     private PsiBuilderImpl myBuilder;
     private IElementType myType;
-    private DoneMarker myDoneMarker;
+    // the done marker is kept here rather than in a separate object: its lexeme index is -1 until the marker is done
+    private int myDoneLexemeIndex = -1;
+    private WhitespacesAndCommentsBinder myDoneEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    private boolean myCollapse;
+    private String myErrorMessage;
     private Throwable myDebugAllocationPosition;
     private ProductionMarker myFirstChild;
     private ProductionMarker myLastChild;
@@ -300,12 +340,19 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       myEdgeTokenBinder = DEFAULT_LEFT_EDGE_TOKEN_BINDER;
     }
 
+    private boolean isDone() {
+      return myDoneLexemeIndex >= 0;
+    }
+
     @Override
     public void clean() {
       super.clean();
       myBuilder = null;
       myType = null;
-      myDoneMarker = null;
+      myDoneLexemeIndex = -1;
+      myDoneEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+      myCollapse = false;
+      myErrorMessage = null;
       myDebugAllocationPosition = null;
       myFirstChild = myLastChild = null;
       myHC = -1;
@@ -330,12 +377,12 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
           lexIdx = lastLeaf;
           hc += child.hc();
           if (child instanceof StartMarker) {
-            lexIdx = ((StartMarker)child).myDoneMarker.myLexemeIndex;
+            lexIdx = ((StartMarker)child).myDoneLexemeIndex;
           }
           child = child.myNext;
         }
 
-        for (int i = builder.myLexStarts[lexIdx]; i < builder.myLexStarts[myDoneMarker.myLexemeIndex]; i++) {
+        for (int i = builder.myLexStarts[lexIdx]; i < builder.myLexStarts[myDoneLexemeIndex]; i++) {
           hc += bufArray != null ? bufArray[i] : buf.charAt(i);
         }
 
@@ -352,7 +399,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
     @Override
     public int getEndOffset() {
-      return myBuilder.myLexStarts[myDoneMarker.myLexemeIndex];
+      return myBuilder.myLexStarts[myDoneLexemeIndex];
     }
 
     public void addChild(ProductionMarker node) {
@@ -402,8 +449,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     @Override
     public void doneBefore(final IElementType type, final Marker before, final String errorMessage) {
       final StartMarker marker = (StartMarker)before;
-      myBuilder.myProduction.add(myBuilder.myProduction.lastIndexOf(marker),
-                                 new ErrorItem(myBuilder, errorMessage, marker.myLexemeIndex));
+      ErrorItem errorItem = new ErrorItem(myBuilder, errorMessage, marker.myLexemeIndex);
+      myBuilder.myProduction.insert(myBuilder.myProduction.lastIndexOf(marker.myId), errorItem.myId);
       doneBefore(type, before);
     }
 
@@ -436,19 +483,19 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       }
 
       if (right != null) {
-        if (myDoneMarker == null) throw new IllegalArgumentException("Cannot set right-edge processor for unclosed marker");
-        myDoneMarker.myEdgeTokenBinder = right;
+        if (!isDone()) throw new IllegalArgumentException("Cannot set right-edge processor for unclosed marker");
+        myDoneEdgeTokenBinder = right;
       }
     }
   }
 
   private Marker precede(final StartMarker marker) {
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = myProduction.lastIndexOf(marker.myId);
     if (idx < 0) {
       LOG.error("Cannot precede dropped or rolled-back marker");
     }
     StartMarker pre = createMarker(marker.myLexemeIndex);
-    myProduction.add(idx, pre);
+    myProduction.insert(idx, pre.myId);
     return pre;
   }
 
@@ -564,63 +611,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   }
 
-  private static class DoneMarker extends ProductionMarker {
-    private StartMarker myStart;
-    private boolean myCollapse = false;
-
-    public DoneMarker() {
-      myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-    }
-
-    public DoneMarker(final StartMarker marker, final int currentLexeme) {
-      this();
-      myLexemeIndex = currentLexeme;
-      myStart = marker;
-    }
-
-    @Override
-    public void clean() {
-      super.clean();
-      myStart = null;
-      myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-    }
-
-    @Override
-    public int hc() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public IElementType getTokenType() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public int getEndOffset() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public int getStartOffset() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-  }
-
-  private static class DoneWithErrorMarker extends DoneMarker {
-    private String myMessage;
-
-    public DoneWithErrorMarker(final StartMarker marker, final int currentLexeme, final String message) {
-      super(marker, currentLexeme);
-      myMessage = message;
-    }
-
-    @Override
-    public void clean() {
-      super.clean();
-      myMessage = null;
-    }
-  }
-
   private static class ErrorItem extends ProductionMarker {
     private final PsiBuilderImpl myBuilder;
     private String myMessage;
@@ -630,6 +620,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       myMessage = message;
       myLexemeIndex = idx;
       myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+      myId = builder.registerMarker(this);
     }
 
     @Override
@@ -790,7 +781,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
     StartMarker marker = createMarker(myCurrentLexeme);
 
-    myProduction.add(marker);
+    myProduction.add(marker.myId);
     return marker;
   }
 
@@ -798,6 +789,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     StartMarker marker = START_MARKERS.alloc();
     marker.myLexemeIndex = lexemeIndex;
     marker.myBuilder = this;
+    marker.myId = registerMarker(marker);
 
     if (myDebugMode) {
       marker.myDebugAllocationPosition = new Throwable("Created at the following trace.");
@@ -818,82 +810,84 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private void rollbackTo(Marker marker) {
     myCurrentLexeme = ((StartMarker)marker).myLexemeIndex;
     myTokenTypeChecked = true;
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = myProduction.lastIndexOf(((StartMarker)marker).myId);
     if (idx < 0) {
       LOG.error("The marker must be added before rolled back to.");
     }
-    myProduction.removeRange(idx, myProduction.size());
-    START_MARKERS.recycle((StartMarker)marker);
+    // the markers started after the rolled back one are gone as well, so their slots can be reused
+    for (int i = myProduction.size() - 1; i > idx; i--) {
+      int id = myProduction.getQuick(i);
+      if (id >= 0) releaseId(id);
+    }
+    myProduction.remove(idx, myProduction.size() - idx);
+    recycleMarker((StartMarker)marker);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void drop(Marker marker) {
-    final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
-    if (doneMarker != null) {
-      myProduction.remove(myProduction.lastIndexOf(doneMarker));
-      DONE_MARKERS.recycle(doneMarker);
+    final StartMarker startMarker = (StartMarker)marker;
+    if (startMarker.isDone()) {
+      myProduction.remove(myProduction.lastIndexOf(~startMarker.myId));
     }
-    final boolean removed = myProduction.remove(myProduction.lastIndexOf(marker)) == marker;
-    if (!removed) {
+    final int idx = myProduction.lastIndexOf(startMarker.myId);
+    if (idx < 0) {
       LOG.error("The marker must be added before it is dropped.");
     }
-    START_MARKERS.recycle((StartMarker)marker);
+    else {
+      myProduction.remove(idx);
+    }
+    recycleMarker(startMarker);
   }
 
   public void error(Marker marker, String message) {
     doValidityChecks(marker, null);
 
-    DoneWithErrorMarker doneMarker = new DoneWithErrorMarker((StartMarker)marker, myCurrentLexeme, message);
-    boolean tieToTheLeft = isEmpty(((StartMarker)marker).myLexemeIndex, myCurrentLexeme);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    final StartMarker startMarker = (StartMarker)marker;
+    boolean tieToTheLeft = isEmpty(startMarker.myLexemeIndex, myCurrentLexeme);
+    if (tieToTheLeft) startMarker.myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    startMarker.myDoneLexemeIndex = myCurrentLexeme;
+    startMarker.myErrorMessage = message;
+    myProduction.add(~startMarker.myId);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void errorBefore(Marker marker, String message, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
+    final StartMarker startMarker = (StartMarker)marker;
+    final StartMarker beforeMarker = (StartMarker)before;
+    int beforeIndex = myProduction.lastIndexOf(beforeMarker.myId);
 
-    DoneWithErrorMarker doneMarker = new DoneWithErrorMarker((StartMarker)marker, ((StartMarker)before).myLexemeIndex, message);
-    boolean tieToTheLeft = isEmpty(((StartMarker)marker).myLexemeIndex, ((StartMarker)before).myLexemeIndex);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    boolean tieToTheLeft = isEmpty(startMarker.myLexemeIndex, beforeMarker.myLexemeIndex);
+    if (tieToTheLeft) startMarker.myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+    startMarker.myDoneLexemeIndex = beforeMarker.myLexemeIndex;
+    startMarker.myErrorMessage = message;
+    myProduction.insert(beforeIndex, ~startMarker.myId);
   }
 
   public void done(final Marker marker) {
     doValidityChecks(marker, null);
 
-    DoneMarker doneMarker = DONE_MARKERS.alloc();
-    doneMarker.myStart = (StartMarker)marker;
-    doneMarker.myLexemeIndex = myCurrentLexeme;
-    boolean tieToTheLeft = doneMarker.myStart.myType.isLeftBound() &&
-                           isEmpty(((StartMarker)marker).myLexemeIndex, myCurrentLexeme);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    final StartMarker startMarker = (StartMarker)marker;
+    boolean tieToTheLeft = startMarker.myType.isLeftBound() && isEmpty(startMarker.myLexemeIndex, myCurrentLexeme);
+    if (tieToTheLeft) startMarker.myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    startMarker.myDoneLexemeIndex = myCurrentLexeme;
+    myProduction.add(~startMarker.myId);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void doneBefore(Marker marker, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
+    final StartMarker startMarker = (StartMarker)marker;
+    final StartMarker beforeMarker = (StartMarker)before;
+    int beforeIndex = myProduction.lastIndexOf(beforeMarker.myId);
 
-    DoneMarker doneMarker = DONE_MARKERS.alloc();
-    doneMarker.myLexemeIndex = ((StartMarker)before).myLexemeIndex;
-    doneMarker.myStart = (StartMarker)marker;
-    boolean tieToTheLeft = doneMarker.myStart.myType.isLeftBound() &&
-                           isEmpty(((StartMarker)marker).myLexemeIndex, ((StartMarker)before).myLexemeIndex);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    boolean tieToTheLeft = startMarker.myType.isLeftBound() && isEmpty(startMarker.myLexemeIndex, beforeMarker.myLexemeIndex);
+    if (tieToTheLeft) startMarker.myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+    startMarker.myDoneLexemeIndex = beforeMarker.myLexemeIndex;
+    myProduction.insert(beforeIndex, ~startMarker.myId);
   }
 
   private boolean isEmpty(final int startIdx, final int endIdx) {
@@ -906,26 +900,25 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   public void collapse(final Marker marker) {
     done(marker);
-    ((StartMarker)marker).myDoneMarker.myCollapse = true;
+    ((StartMarker)marker).myCollapse = true;
   }
 
-  @SuppressWarnings({"UseOfSystemOutOrSystemErr", "SuspiciousMethodCalls"})
+  @SuppressWarnings({"UseOfSystemOutOrSystemErr"})
   private void doValidityChecks(final Marker marker, @Nullable final Marker before) {
-    final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
-    if (doneMarker != null) {
+    if (((StartMarker)marker).isDone()) {
       LOG.error("Marker already done.");
     }
 
     if (!myDebugMode) return;
 
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = myProduction.lastIndexOf(((StartMarker)marker).myId);
     if (idx < 0) {
       LOG.error("Marker has never been added.");
     }
 
     int endIdx = myProduction.size();
     if (before != null) {
-      endIdx = myProduction.lastIndexOf(before);
+      endIdx = myProduction.lastIndexOf(((StartMarker)before).myId);
       if (endIdx < 0) {
         LOG.error("'Before' marker has never been added.");
       }
@@ -935,10 +928,11 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
 
     for (int i = endIdx - 1; i > idx; i--) {
-      Object item = myProduction.get(i);
+      int id = myProduction.getQuick(i);
+      Object item = id >= 0 ? myMarkers.get(id) : null;
       if (item instanceof StartMarker) {
         StartMarker otherMarker = (StartMarker)item;
-        if (otherMarker.myDoneMarker == null) {
+        if (!otherMarker.isDone()) {
           final Throwable debugAllocOther = otherMarker.myDebugAllocationPosition;
           final Throwable debugAllocThis = ((StartMarker)marker).myDebugAllocationPosition;
           if (debugAllocOther != null) {
@@ -954,11 +948,11 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   @Override
   public void error(String messageText) {
-    final ProductionMarker lastMarker = myProduction.get(myProduction.size() - 1);
-    if (lastMarker instanceof ErrorItem && lastMarker.myLexemeIndex == myCurrentLexeme) {
+    final int lastId = myProduction.get(myProduction.size() - 1);
+    if (lastId >= 0 && myMarkers.get(lastId) instanceof ErrorItem && myMarkers.get(lastId).myLexemeIndex == myCurrentLexeme) {
       return;
     }
-    myProduction.add(new ErrorItem(this, messageText, myCurrentLexeme));
+    myProduction.add(new ErrorItem(this, messageText, myCurrentLexeme).myId);
   }
 
   @Override
@@ -968,12 +962,10 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
     finally {
       for (int i = 0, myProductionSize = myProduction.size(); i < myProductionSize; i++) {
-        ProductionMarker marker = myProduction.get(i);
+        int id = myProduction.getQuick(i);
+        ProductionMarker marker = id >= 0 ? myMarkers.get(id) : null;
         if (marker instanceof StartMarker) {
-          START_MARKERS.recycle((StartMarker)marker);
-        }
-        else if (marker instanceof DoneMarker) {
-          DONE_MARKERS.recycle((DoneMarker)marker);
+          recycleMarker((StartMarker)marker);
         }
       }
     }
@@ -1070,7 +1062,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       LOG.error("Parser produced no markers. Text:\n" + myText);
     }
 
-    final StartMarker rootMarker = (StartMarker)myProduction.get(0);
+    final StartMarker rootMarker = (StartMarker)myMarkers.get(myProduction.get(0));
     rootMarker.myParent = rootMarker.myFirstChild = rootMarker.myLastChild = rootMarker.myNext = null;
     StartMarker curNode = rootMarker;
     final Stack<StartMarker> nodes = new Stack<StartMarker>();
@@ -1078,10 +1070,18 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
     @SuppressWarnings({"MultipleVariablesInDeclaration"}) int lastErrorIndex = -1, maxDepth = 0, curDepth = 0;
     for (int i = 1; i < myProduction.size(); i++) {
-      final ProductionMarker item = myProduction.get(i);
+      final int id = myProduction.getQuick(i);
 
       if (curNode == null) LOG.error("Unexpected end of the production");
 
+      if (id < 0) {
+        if (myMarkers.get(~id) != curNode) LOG.error(UNBALANCED_MESSAGE);
+        curNode = nodes.pop();
+        curDepth--;
+        continue;
+      }
+
+      final ProductionMarker item = myMarkers.get(id);
       item.myParent = curNode;
       if (item instanceof StartMarker) {
         final StartMarker marker = (StartMarker)item;
@@ -1092,11 +1092,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
         curDepth++;
         if (curDepth > maxDepth) maxDepth = curDepth;
       }
-      else if (item instanceof DoneMarker) {
-        if (((DoneMarker)item).myStart != curNode) LOG.error(UNBALANCED_MESSAGE);
-        curNode = nodes.pop();
-        curDepth--;
-      }
       else if (item instanceof ErrorItem) {
         int curToken = item.myLexemeIndex;
         if (curToken == lastErrorIndex) continue;
@@ -1110,8 +1105,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       LOG.error("Tokens " + missed + " were not inserted into the tree. " +(myFile != null? myFile.getLanguage()+", ":"")+"Text:\n" + myText);
     }
 
-    if (rootMarker.myDoneMarker.myLexemeIndex < myLexemeCount) {
-      final List<IElementType> missed = CollectionFactory.arrayList(myLexTypes, rootMarker.myDoneMarker.myLexemeIndex, myLexemeCount);
+    if (rootMarker.myDoneLexemeIndex < myLexemeCount) {
+      final List<IElementType> missed = CollectionFactory.arrayList(myLexTypes, rootMarker.myDoneLexemeIndex, myLexemeCount);
       LOG.error("Tokens " + missed + " are outside of root element \"" + rootMarker.myType + "\". Text:\n" + myText);
     }
 
@@ -1135,18 +1130,19 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     RelativeTokenTextView tokenTextGetter = null;
 
     for (int i = 1, size = myProduction.size() - 1; i < size; i++) {
-      final ProductionMarker item = myProduction.get(i);
+      final int id = myProduction.getQuick(i);
 
-      if (item instanceof StartMarker && ((StartMarker)item).myDoneMarker == null) {
+      if (id >= 0 && myMarkers.get(id) instanceof StartMarker && !((StartMarker)myMarkers.get(id)).isDone()) {
         LOG.error(UNBALANCED_MESSAGE);
       }
 
-      final int prevProductionLexIndex = myProduction.get(i - 1).myLexemeIndex;
-      int idx = item.myLexemeIndex;
+      final int prevProductionLexIndex = getLexemeIndex(myProduction.getQuick(i - 1));
+      final int lexemeIndex = getLexemeIndex(id);
+      int idx = lexemeIndex;
       while (idx > prevProductionLexIndex && whitespaceOrComment(myLexTypes[idx - 1])) idx--;
       final int wsStartIndex = idx;
 
-      int wsEndIndex = item.myLexemeIndex;
+      int wsEndIndex = lexemeIndex;
       while (wsEndIndex < myLexemeCount && whitespaceOrComment(myLexTypes[wsEndIndex])) wsEndIndex++;
 
       if (wsTokens == null) wsTokens = new RelativeTokenTypesView();
@@ -1155,7 +1151,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       if (tokenTextGetter == null) tokenTextGetter = new RelativeTokenTextView();
       tokenTextGetter.configure(wsStartIndex);
 
-      item.myLexemeIndex = wsStartIndex + item.myEdgeTokenBinder.getEdgePosition(wsTokens, atEnd, tokenTextGetter);
+      setLexemeIndex(id, wsStartIndex + getEdgeTokenBinder(id).getEdgePosition(wsTokens, atEnd, tokenTextGetter));
     }
   }
 
@@ -1210,22 +1206,31 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     CompositeElement curNode = rootNode;
 
     int lexIndex = rootMarker.myLexemeIndex;
-    ProductionMarker item = rootMarker.myFirstChild != null ? rootMarker.myFirstChild : rootMarker.myDoneMarker;
+    ProductionMarker item = rootMarker.myFirstChild;
     while (true) {
-      lexIndex = insertLeaves(lexIndex, item.myLexemeIndex, curNode);
+      if (item == null) {
+        // no more children: the current marker is done
+        lexIndex = insertLeaves(lexIndex, curMarker.myDoneLexemeIndex, curNode);
+        if (curMarker == rootMarker) break;
+
+        item = curMarker.myNext;
+        curMarker = (StartMarker)curMarker.myParent;
+        curNode = curNode.getTreeParent();
+        continue;
+      }
 
-      if (item == rootMarker.myDoneMarker) break;
+      lexIndex = insertLeaves(lexIndex, item.myLexemeIndex, curNode);
 
       if (item instanceof StartMarker) {
         final StartMarker marker = (StartMarker)item;
-        if (!marker.myDoneMarker.myCollapse) {
+        if (!marker.myCollapse) {
           curMarker = marker;
 
           final CompositeElement childNode = createComposite(marker);
           curNode.rawAddChildrenWithoutNotifications(childNode);
           curNode = childNode;
 
-          item = marker.myFirstChild != null ? marker.myFirstChild : marker.myDoneMarker;
+          item = marker.myFirstChild;
           continue;
         }
         else {
@@ -1236,13 +1241,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
         final CompositeElement errorElement = Factory.createErrorElement(((ErrorItem)item).myMessage);
         curNode.rawAddChildrenWithoutNotifications(errorElement);
       }
-      else if (item instanceof DoneMarker) {
-        curMarker = (StartMarker)((DoneMarker)item).myStart.myParent;
-        curNode = curNode.getTreeParent();
-        item = ((DoneMarker)item).myStart;
-      }
 
-      item = item.myNext != null ? item.myNext : curMarker.myDoneMarker;
+      item = item.myNext;
     }
   }
 
@@ -1265,17 +1265,16 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   private int collapseLeaves(final CompositeElement ast, final StartMarker startMarker) {
     final int start = myLexStarts[startMarker.myLexemeIndex];
-    final int end = myLexStarts[startMarker.myDoneMarker.myLexemeIndex];
+    final int end = myLexStarts[startMarker.myDoneLexemeIndex];
     final TreeElement leaf = createLeaf(startMarker.myType, start, end);
     ast.rawAddChildrenWithoutNotifications(leaf);
-    return startMarker.myDoneMarker.myLexemeIndex;
+    return startMarker.myDoneLexemeIndex;
   }
 
   private static CompositeElement createComposite(final StartMarker marker) {
     final IElementType type = marker.myType;
     if (type == TokenType.ERROR_ELEMENT) {
-      String message = marker.myDoneMarker instanceof DoneWithErrorMarker ? ((DoneWithErrorMarker)marker.myDoneMarker).myMessage : null;
-      return Factory.createErrorElement(message);
+      return Factory.createErrorElement(marker.myErrorMessage);
     }
 
     if (type == null) {
@@ -1290,8 +1289,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     if (node instanceof ErrorItem) return ((ErrorItem)node).myMessage;
     if (node instanceof StartMarker) {
       final StartMarker marker = (StartMarker)node;
-      if (marker.myType == TokenType.ERROR_ELEMENT && marker.myDoneMarker instanceof DoneWithErrorMarker) {
-        return ((DoneWithErrorMarker)marker.myDoneMarker).myMessage;
+      if (marker.myType == TokenType.ERROR_ELEMENT) {
+        return marker.myErrorMessage;
       }
     }
 
@@ -1477,8 +1476,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       while (child != null) {
         lexIndex = insertLeaves(lexIndex, child.myLexemeIndex, marker.myBuilder);
 
-        if (child instanceof StartMarker && ((StartMarker)child).myDoneMarker.myCollapse) {
-          int lastIndex = ((StartMarker)child).myDoneMarker.myLexemeIndex;
+        if (child instanceof StartMarker && ((StartMarker)child).myCollapse) {
+          int lastIndex = ((StartMarker)child).myDoneLexemeIndex;
           insertLeaf(child.getTokenType(), marker.myBuilder, child.myLexemeIndex, lastIndex);
         }
         else {
@@ -1487,12 +1486,12 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
         }
 
         if (child instanceof StartMarker) {
-          lexIndex = ((StartMarker)child).myDoneMarker.myLexemeIndex;
+          lexIndex = ((StartMarker)child).myDoneLexemeIndex;
         }
         child = child.myNext;
       }
 
-      insertLeaves(lexIndex, marker.myDoneMarker.myLexemeIndex, marker.myBuilder);
+      insertLeaves(lexIndex, marker.myDoneLexemeIndex, marker.myBuilder);
       into.set(nodes);
       nodes = null;
 
@@ -1614,65 +1613,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return ASTFactory.leaf(type, text);
   }
 
-  /**
-   * just to make removeRange method available.
-   */
-  private static class MyList extends ArrayList<ProductionMarker> {
-    private static final Field ourElementDataField;
-
-    static {
-      Field f;
-      try {
-        f = ArrayList.class.getDeclaredField("elementData");
-        f.setAccessible(true);
-      }
-      catch(NoSuchFieldException e) {
-        // IBM J9 does not have the field
-        f = null;
-
-      }
-      ourElementDataField = f;
-    }
-
-    private Object[] cachedElementData;
-
-    @Override
-    public void removeRange(final int fromIndex, final int toIndex) {
-      super.removeRange(fromIndex, toIndex);
-    }
-
-    MyList() {
-      super(256);
-    }
-
-    @Override
-    public int lastIndexOf(final Object o) {
-      if (cachedElementData == null) return super.lastIndexOf(o);
-      for (int i = size() - 1; i >= 0; i--) {
-        if (cachedElementData[i] == o) return i;
-      }
-      return -1;
-    }
-
-    @Override
-    public void ensureCapacity(final int minCapacity) {
-      if (cachedElementData == null || minCapacity >= cachedElementData.length) {
-        super.ensureCapacity(minCapacity);
-        initCachedField();
-      }
-    }
-
-    private void initCachedField() {
-      if (ourElementDataField == null) return;
-      try {
-        cachedElementData = (Object[])ourElementDataField.get(this);
-      }
-      catch (Exception e) {
-        LOG.error(e);
-      }
-    }
-  }
-
   @SuppressWarnings("unchecked")
   @Override
   public <T> T getUserDataUnprotected(@NotNull final Key<T> key) {
@@ -173,7 +173,11 @@ public class SegmentArray {
   }
 
   public final void shiftSegments(int startIndex, int shift) {
-    for (int i = startIndex; i < mySegmentCount; i++) {
+    shiftSegments(startIndex, mySegmentCount, shift);
+  }
+
+  public final void shiftSegments(int startIndex, int endIndex, int shift) {
+    for (int i = startIndex; i < endIndex; i++) {
       myStarts[i] += shift;
       myEnds[i] += shift;
       if (myStarts[i] < 0 || myEnds[i] < 0) {
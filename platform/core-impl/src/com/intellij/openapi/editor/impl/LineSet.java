@@ -29,6 +29,12 @@ import org.jetbrains.annotations.NotNull;
  * Data structure specialized for working with document text lines, i.e. stores information about line mapping to document
  * offsets and provides convenient ways to work with that information like retrieving target line by document offset etc.
  * <p/>
+ * Offset shifts caused by document changes are not applied to all subsequent lines immediately. Instead, the lines starting from
+ * {@link #myDeferredShiftStart} are stored without {@link #myDeferredShift} and the shift is materialized lazily only when a change
+ * touches those lines. Hence, a series of changes made at the same document region (typing, paste, bulk replace in a local area)
+ * costs time proportional to the number of changed lines rather than to the number of lines in the document. Line lookup by
+ * offset is a binary search over the stored offsets.
+ * <p/>
  * Not thread-safe.
  */
 public class LineSet{
@@ -36,10 +42,43 @@ public class LineSet{
   private static final int MODIFIED_MASK = 0x4;
   private static final int SEPARATOR_MASK = 0x3;
 
+  /**
+   * Index of the first line which offsets are stored without {@link #myDeferredShift} applied. All lines before it are stored as is.
+   */
+  private int myDeferredShiftStart;
+  private int myDeferredShift;
+
   public int findLineIndex(int offset) {
-    int lineIndex = mySegments.findSegmentIndex(offset);
-    assert lineIndex >= 0;
-    return lineIndex;
+    int lineCount = getLineCount();
+    if (lineCount <= 0) {
+      if (offset == 0) return 0;
+      throw new IllegalStateException("no segments available. offset = " + offset);
+    }
+
+    final int lastValidIndex = lineCount - 1;
+    final int lastValidOffset = getLineEnd(lastValidIndex);
+    if (offset > lastValidOffset || offset < 0) {
+      throw new IndexOutOfBoundsException("Wrong offset: " + offset + ". Should be in range: [0, " + lastValidOffset + "]");
+    }
+    if (offset == lastValidOffset) return lastValidIndex;
+
+    int start = 0;
+    int end = lastValidIndex;
+    while (start < end) {
+      int i = (start + end) >>> 1;
+      if (offset < getLineStart(i)) {
+        end = i - 1;
+      }
+      else if (offset >= getLineEnd(i)) {
+        start = i + 1;
+      }
+      else {
+        return i;
+      }
+    }
+
+    assert start >= 0 && getLineStart(start) <= offset && offset < getLineEnd(start) : start;
+    return start;
   }
 
   public LineIterator createIterator() {
@@ -47,13 +86,13 @@ public class LineSet{
   }
 
   final int getLineStart(int index) {
-    int lineStart = mySegments.getSegmentStart(index);
+    int lineStart = mySegments.getSegmentStart(index) + getDeferredShift(index);
     assert lineStart >= 0;
     return lineStart;
   }
 
   final int getLineEnd(int index) {
-    return mySegments.getSegmentEnd(index);
+    return mySegments.getSegmentEnd(index) + getDeferredShift(index);
   }
 
   final boolean isModified(int index) {
@@ -118,51 +157,34 @@ public class LineSet{
     final int changedLineIndex = e.getStartOldIndex();
     final int lengthDiff = e.getOldLength();
 
-    SegmentArrayWithData workingCopySegmentsForTesting = null;
-    SegmentArrayWithData segments; //
+    SegmentArrayWithData segmentsBeforeChange = doTest ? copySegments() : null;
 
-    if (doTest) {
-      segments = new SegmentArrayWithData();
-      workingCopySegmentsForTesting = new SegmentArrayWithData();
-      fillSegments(segments, workingCopySegmentsForTesting);
-    } else {
-      segments = mySegments;
-    }
+    applyDeferredShift(changedLineIndex + optimizedLineShift + 1);
 
-    final int oldSegmentStart = segments.getSegmentStart(changedLineIndex);
-    final int lastChangedEnd = segments.getSegmentEnd(changedLineIndex + optimizedLineShift);
-    final short lastChangedData = segments.getSegmentData(changedLineIndex + optimizedLineShift);
+    final int oldSegmentStart = mySegments.getSegmentStart(changedLineIndex);
+    final int lastChangedEnd = mySegments.getSegmentEnd(changedLineIndex + optimizedLineShift);
+    final short lastChangedData = mySegments.getSegmentData(changedLineIndex + optimizedLineShift);
     final int newSegmentEnd = oldSegmentStart + (insertionPoint - oldSegmentStart) + (lastChangedEnd - insertionPoint - lengthDiff);
 
-    segments.remove(changedLineIndex, changedLineIndex + optimizedLineShift);
+    removeLines(changedLineIndex, changedLineIndex + optimizedLineShift);
 
     if (newSegmentEnd != 0) {
-      segments.setElementAt(
+      mySegments.setElementAt(
         changedLineIndex,
         oldSegmentStart, newSegmentEnd,
         lastChangedData | MODIFIED_MASK
       );
     } else {
-      segments.remove(changedLineIndex, changedLineIndex + 1);
+      removeLines(changedLineIndex, changedLineIndex + 1);
     }
 
-// update data after lineIndex, shifting with optimizedLineShift
-    final int segmentCount = segments.getSegmentCount();
-    for(int i = changedLineIndex + 1; i < segmentCount; ++i) {
-      segments.setElementAt(i, segments.getSegmentStart(i) - lengthDiff,
-        segments.getSegmentEnd(i) - lengthDiff,
-        segments.getSegmentData(i)
-      );
-    }
+    // update data after lineIndex, shifting with optimizedLineShift
+    shiftLines(changedLineIndex + 1, -lengthDiff);
 
-    if (doTest) {
-      final SegmentArrayWithData data = mySegments;
-      mySegments = segments;
-      addEmptyLineAtEnd();
+    addEmptyLineAtEnd();
 
-      doCheckResults(workingCopySegmentsForTesting, e, data, segments);
-    } else {
-      addEmptyLineAtEnd();
+    if (doTest) {
+      doCheckResults(segmentsBeforeChange, e);
     }
   }
 
@@ -172,46 +194,30 @@ public class LineSet{
     final int lengthDiff = e.getNewLength();
     final LineTokenizer tokenizer = new LineTokenizer(e.getNewFragment());
 
-    SegmentArrayWithData workingCopySegmentsForTesting = null;
-    SegmentArrayWithData segments; //
-
-    if (doTest) {
-      segments = new SegmentArrayWithData();
-      workingCopySegmentsForTesting = new SegmentArrayWithData();
-      fillSegments(segments, workingCopySegmentsForTesting);
-    } else {
-      segments = mySegments;
-    }
-
-    int i;
+    SegmentArrayWithData segmentsBeforeChange = doTest ? copySegments() : null;
 
-    // update data after lineIndex, shifting with optimizedLineShift
-    for(i = segments.getSegmentCount() - 1; i > changedLineIndex; --i) {
-      segments.setElementAt(i + optimizedLineShift, segments.getSegmentStart(i) + lengthDiff,
-        segments.getSegmentEnd(i) + lengthDiff,
-        segments.getSegmentData(i)
-      );
-    }
+    applyDeferredShift(changedLineIndex + 1);
 
-    final int oldSegmentEnd = segments.getSegmentEnd(changedLineIndex);
-    final int oldSegmentStart = segments.getSegmentStart(changedLineIndex);
-    final short oldSegmentData = segments.getSegmentData(changedLineIndex);
+    final int oldSegmentEnd = mySegments.getSegmentEnd(changedLineIndex);
+    final int oldSegmentStart = mySegments.getSegmentStart(changedLineIndex);
+    final short oldSegmentData = mySegments.getSegmentData(changedLineIndex);
 
     final int newChangedLineEnd = insertionPoint + tokenizer.getLineSeparatorLength() + tokenizer.getOffset() + tokenizer.getLength();
-    segments.setElementAt(
+    mySegments.setElementAt(
       changedLineIndex,
       oldSegmentStart, newChangedLineEnd,
       tokenizer.getLineSeparatorLength() | MODIFIED_MASK
     );
 
     tokenizer.advance();
-    i = 1;
+    int i = 0;
     int lastFragmentLength = 0;
+    SegmentArrayWithData insertSegments = new SegmentArrayWithData();
 
     while(!tokenizer.atEnd()) {
       lastFragmentLength = tokenizer.getLineSeparatorLength() != 0 ? 0:tokenizer.getLength();
-      segments.setElementAt(
-        changedLineIndex + i,
+      insertSegments.setElementAt(
+        i,
         insertionPoint + tokenizer.getOffset(),
         insertionPoint + tokenizer.getOffset() + tokenizer.getLength() + tokenizer.getLineSeparatorLength(),
         tokenizer.getLineSeparatorLength() | MODIFIED_MASK
@@ -220,55 +226,53 @@ public class LineSet{
       tokenizer.advance();
     }
 
-    segments.setElementAt(
-      changedLineIndex + optimizedLineShift, insertionPoint + lengthDiff - lastFragmentLength,
+    insertSegments.setElementAt(
+      optimizedLineShift - 1, insertionPoint + lengthDiff - lastFragmentLength,
       oldSegmentEnd + lengthDiff,
       oldSegmentData | MODIFIED_MASK
     );
+    insertLines(insertSegments, changedLineIndex + 1);
 
-    if (doTest) {
-      final SegmentArrayWithData data = mySegments;
-      mySegments = segments;
-      addEmptyLineAtEnd();
+    // update data after lineIndex, shifting with optimizedLineShift
+    shiftLines(changedLineIndex + optimizedLineShift + 1, lengthDiff);
 
-      doCheckResults(workingCopySegmentsForTesting, e, data, segments);
-    } else {
-      addEmptyLineAtEnd();
+    addEmptyLineAtEnd();
+
+    if (doTest) {
+      doCheckResults(segmentsBeforeChange, e);
     }
   }
 
-  private void doCheckResults(final SegmentArrayWithData workingCopySegmentsForTesting, final DocumentEventImpl e,
-                              final SegmentArrayWithData data,
-                              final SegmentArrayWithData segments) {
-    mySegments = workingCopySegmentsForTesting;
+  private void doCheckResults(final SegmentArrayWithData segmentsBeforeChange, final DocumentEventImpl e) {
+    applyDeferredShift(getLineCount());
+    final SegmentArrayWithData segments = mySegments;
+
+    mySegments = segmentsBeforeChange;
     processMultilineChange(e);
-    mySegments = data;
+    applyDeferredShift(getLineCount());
+    final SegmentArrayWithData expectedSegments = mySegments;
+    mySegments = segments;
 
-    assert workingCopySegmentsForTesting.getSegmentCount() == segments.getSegmentCount();
+    assert expectedSegments.getSegmentCount() == segments.getSegmentCount();
     for(int i =0; i < segments.getSegmentCount();++i) {
-      assert workingCopySegmentsForTesting.getSegmentStart(i) == segments.getSegmentStart(i);
-      assert workingCopySegmentsForTesting.getSegmentEnd(i) == segments.getSegmentEnd(i);
-      assert workingCopySegmentsForTesting.getSegmentData(i) == segments.getSegmentData(i);
+      assert expectedSegments.getSegmentStart(i) == segments.getSegmentStart(i);
+      assert expectedSegments.getSegmentEnd(i) == segments.getSegmentEnd(i);
+      assert expectedSegments.getSegmentData(i) == segments.getSegmentData(i);
     }
-
-    processMultilineChange(e);
   }
 
-  private void fillSegments(final SegmentArrayWithData segments, final SegmentArrayWithData workingCopySegmentsForTesting) {
+  private SegmentArrayWithData copySegments() {
+    applyDeferredShift(getLineCount());
+    SegmentArrayWithData result = new SegmentArrayWithData();
     for(int i = mySegments.getSegmentCount() - 1; i >=0; --i) {
-      segments.setElementAt(
-        i,
-        mySegments.getSegmentStart(i),
-        mySegments.getSegmentEnd(i),
-        mySegments.getSegmentData(i)
-      );
-      workingCopySegmentsForTesting.setElementAt(
+      result.setElementAt(
         i,
         mySegments.getSegmentStart(i),
         mySegments.getSegmentEnd(i),
         mySegments.getSegmentData(i)
       );
     }
+    return result;
   }
 
   private void processMultilineChange(DocumentEventImpl e) {
@@ -302,6 +306,7 @@ public class LineSet{
 
   private void updateSegments(CharSequence newText, int oldStartLine, int oldEndLine, int offset1,
                                               DocumentEventImpl e) {
+    applyDeferredShift(oldEndLine + 1);
     int count = 0;
     LineTokenizer lineTokenizer = new LineTokenizer(newText);
     for (int index = oldStartLine; index <= oldEndLine; index++) {
@@ -309,7 +314,7 @@ public class LineSet{
         setSegmentAt(mySegments, index, lineTokenizer, offset1, true);
         lineTokenizer.advance();
       } else {
-        mySegments.remove(index, oldEndLine + 1);
+        removeLines(index, oldEndLine + 1);
         break;
       }
       count++;
@@ -323,21 +328,20 @@ public class LineSet{
         count++;
         i++;
       }
-      mySegments.insert(insertSegments, oldEndLine + 1);
+      insertLines(insertSegments, oldEndLine + 1);
     }
     int shift = e.getNewLength() - e.getOldLength();
-    mySegments.shiftSegments(oldStartLine + count, shift);
+    shiftLines(oldStartLine + count, shift);
   }
 
   private void processOneLineChange(DocumentEventImpl e) {
     // Check, if the change on the end of text
-    if (e.getOffset() >= mySegments.getSegmentEnd(mySegments.getSegmentCount() - 1)) {
-      mySegments.changeSegmentLength(mySegments.getSegmentCount() - 1, e.getNewLength() - e.getOldLength());
-      setSegmentModified(mySegments, mySegments.getSegmentCount() - 1);
-    } else {
-      mySegments.changeSegmentLength(e.getStartOldIndex(), e.getNewLength() - e.getOldLength());
-      setSegmentModified(mySegments, e.getStartOldIndex());
-    }
+    int lastIndex = mySegments.getSegmentCount() - 1;
+    int index = e.getOffset() >= getLineEnd(lastIndex) ? lastIndex : e.getStartOldIndex();
+    applyDeferredShift(index + 1);
+    mySegments.setElementAt(index, mySegments.getSegmentStart(index), mySegments.getSegmentEnd(index) + e.getNewLength() - e.getOldLength(),
+                            mySegments.getSegmentData(index) | MODIFIED_MASK);
+    shiftLines(index + 1, e.getNewLength() - e.getOldLength());
   }
 
   public void clearModificationFlags() {
@@ -346,6 +350,64 @@ public class LineSet{
     }
   }
 
+  private int getDeferredShift(int index) {
+    return index >= myDeferredShiftStart ? myDeferredShift : 0;
+  }
+
+  /**
+   * Applies deferred shift to the lines before the given index, so that they may be modified directly.
+   */
+  private void applyDeferredShift(int endIndex) {
+    if (myDeferredShift == 0 || endIndex <= myDeferredShiftStart) return;
+    int lineCount = mySegments.getSegmentCount();
+    if (endIndex >= lineCount) {
+      mySegments.shiftSegments(myDeferredShiftStart, lineCount, myDeferredShift);
+      myDeferredShiftStart = 0;
+      myDeferredShift = 0;
+    }
+    else {
+      mySegments.shiftSegments(myDeferredShiftStart, endIndex, myDeferredShift);
+      myDeferredShiftStart = endIndex;
+    }
+  }
+
+  /**
+   * Shifts offsets of all lines starting from the given index. Only the lines between the given index and the current deferred
+   * shift start are processed, the rest is accumulated in the deferred shift.
+   */
+  private void shiftLines(int startIndex, int shift) {
+    if (shift == 0 || startIndex >= mySegments.getSegmentCount()) return;
+    if (myDeferredShift == 0) {
+      myDeferredShiftStart = startIndex;
+    }
+    else if (startIndex <= myDeferredShiftStart) {
+      mySegments.shiftSegments(startIndex, myDeferredShiftStart, shift);
+    }
+    else {
+      mySegments.shiftSegments(myDeferredShiftStart, startIndex, myDeferredShift);
+      myDeferredShiftStart = startIndex;
+    }
+    myDeferredShift += shift;
+  }
+
+  private void removeLines(int startIndex, int endIndex) {
+    if (myDeferredShiftStart >= endIndex) {
+      myDeferredShiftStart -= endIndex - startIndex;
+    }
+    else if (myDeferredShiftStart > startIndex) {
+      myDeferredShiftStart = startIndex;
+    }
+    mySegments.remove(startIndex, endIndex);
+  }
+
+  private void insertLines(@NotNull SegmentArrayWithData segments, int startIndex) {
+    applyDeferredShift(startIndex);
+    if (myDeferredShiftStart >= startIndex) {
+      myDeferredShiftStart += segments.getSegmentCount();
+    }
+    mySegments.insert(segments, startIndex);
+  }
+
   private static void setSegmentAt(SegmentArrayWithData segmentArrayWithData, int index, LineTokenizer lineTokenizer, int offsetShift, boolean isModified) {
     int offset = lineTokenizer.getOffset() + offsetShift;
     int length = lineTokenizer.getLength();
@@ -363,6 +425,8 @@ public class LineSet{
 
   private void initSegments(CharSequence text, boolean toSetModified) {
     mySegments.removeAll();
+    myDeferredShiftStart = 0;
+    myDeferredShift = 0;
     LineTokenizer lineTokenizer = new LineTokenizer(text);
     int i = 0;
     while(!lineTokenizer.atEnd()) {
@@ -378,6 +442,7 @@ public class LineSet{
   private void addEmptyLineAtEnd() {
     int segmentCount = mySegments.getSegmentCount();
     if(segmentCount > 0 && getSeparatorLength(segmentCount-1) > 0) {
+      applyDeferredShift(segmentCount);
       mySegments.setElementAt(segmentCount, mySegments.getSegmentEnd(segmentCount-1),  mySegments.getSegmentEnd(segmentCount-1), 0);
       setSegmentModified(mySegments, segmentCount);
     }
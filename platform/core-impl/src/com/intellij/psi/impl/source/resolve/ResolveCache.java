@@ -25,6 +25,7 @@ import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.RecursionGuard;
 import com.intellij.openapi.util.RecursionManager;
 import com.intellij.openapi.util.Trinity;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiPolyVariantReference;
 import com.intellij.psi.PsiReference;
@@ -39,14 +40,28 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.Reference;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ResolveCache {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.resolve.ResolveCache");
   private final Map<PsiPolyVariantReference,Reference<ResolveResult[]>>[] myPolyVariantResolveMaps = new Map[4];
   private final Map<PsiReference,Reference>[] myResolveMaps = new Map[4];
   private final AtomicInteger myClearCount = new AtomicInteger(0);
+  // the results which weren't requested recently are evicted when a map grows bigger, 0 means the maps are limited by the soft references only
+  private final int myMaxSize = Registry.intValue("resolve.cache.max.size", 0);
+  // the number of results put to each map since its last eviction sweep plus the number of results the sweep has kept
+  private final AtomicInteger[] myPolyVariantResolveSizes = createSizes();
+  private final AtomicInteger[] myResolveSizes = createSizes();
+  private final AtomicBoolean mySweeping = new AtomicBoolean();
+  private final AtomicInteger myEvictionCount = new AtomicInteger();
+  // resolve is the hottest path of highlighting, so the hit/miss counters shared by all threads are updated on demand only
+  private final boolean myCollectStatistics = Registry.is("resolve.cache.statistics", false);
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
   private final RecursionGuard myGuard = RecursionManager.createGuard("resolveCache");
 
   public static ResolveCache getInstance(Project project) {
@@ -88,6 +103,15 @@ public class ResolveCache {
     }
   }
 
+  @NotNull
+  private static AtomicInteger[] createSizes() {
+    AtomicInteger[] sizes = new AtomicInteger[4];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = new AtomicInteger();
+    }
+    return sizes;
+  }
+
   private static <K,V> ConcurrentWeakHashMap<K, V> createWeakMap() {
     return new ConcurrentWeakHashMap<K,V>(100, 0.75f, Runtime.getRuntime().availableProcessors(), TObjectHashingStrategy.CANONICAL);
   }
@@ -105,12 +129,18 @@ public class ResolveCache {
     myPolyVariantResolveMaps[3].clear();   //nonphysical incomplete
     myResolveMaps[2].clear();              //nonphysical complete
     myResolveMaps[3].clear();              //nonphysical incomplete
+
+    for (int i = isPhysical ? 0 : 2; i < 4; i++) {
+      myPolyVariantResolveSizes[i].set(0);
+      myResolveSizes[i].set(0);
+    }
   }
 
   @Nullable
   private <TRef extends PsiReference, TResult> TResult resolve(@NotNull final TRef ref,
                                                                @NotNull final AbstractResolver<TRef, TResult> resolver,
                                                                @NotNull Map<? super TRef,Reference<TResult>>[] maps,
+                                                               @NotNull AtomicInteger[] sizes,
                                                                boolean needToPreventRecursion,
                                                                final boolean incompleteCode, boolean poly) {
     ProgressIndicatorProvider.checkCanceled();
@@ -120,8 +150,10 @@ public class ResolveCache {
     boolean physical = ref.getElement().isPhysical();
     TResult result = getCached(ref, maps, physical, incompleteCode);
     if (result != null) {
+      if (myCollectStatistics) myHitCount.incrementAndGet();
       return result;
     }
+    if (myCollectStatistics) myMissCount.incrementAndGet();
 
     Computable<TResult> computable = new Computable<TResult>() {
       @Override
@@ -133,7 +165,7 @@ public class ResolveCache {
     RecursionGuard.StackStamp stamp = myGuard.markStack();
     result = needToPreventRecursion ? myGuard.doPreventingRecursion(Trinity.create(ref, incompleteCode, poly), true, computable) : computable.compute();
     if (stamp.mayCacheNow()) {
-      cache(ref, result, maps, physical, incompleteCode, clearCountOnStart);
+      cache(ref, result, maps, sizes, physical, incompleteCode, clearCountOnStart);
     }
     return result;
   }
@@ -142,7 +174,7 @@ public class ResolveCache {
                                                                                  @NotNull PolyVariantResolver<T> resolver,
                                                                                  boolean needToPreventRecursion,
                                                                                  boolean incompleteCode) {
-    ResolveResult[] result = resolve(ref, resolver, myPolyVariantResolveMaps, needToPreventRecursion, incompleteCode, true);
+    ResolveResult[] result = resolve(ref, resolver, myPolyVariantResolveMaps, myPolyVariantResolveSizes, needToPreventRecursion, incompleteCode, true);
     return result == null ? ResolveResult.EMPTY_ARRAY : result;
   }
 
@@ -150,7 +182,7 @@ public class ResolveCache {
                                        @NotNull Resolver resolver,
                                        boolean needToPreventRecursion,
                                        boolean incompleteCode) {
-    return resolve(ref, resolver, (Map[]) myResolveMaps, needToPreventRecursion, incompleteCode, false);
+    return resolve(ref, resolver, (Map[]) myResolveMaps, myResolveSizes, needToPreventRecursion, incompleteCode, false);
   }
 
   @Nullable
@@ -158,7 +190,7 @@ public class ResolveCache {
                                        @NotNull AbstractResolver<TRef, TResult> resolver,
                                        boolean needToPreventRecursion,
                                        boolean incompleteCode) {
-    return (TResult)resolve(ref, resolver, (Map[]) myResolveMaps, needToPreventRecursion, incompleteCode, false);
+    return (TResult)resolve(ref, resolver, (Map[]) myResolveMaps, myResolveSizes, needToPreventRecursion, incompleteCode, false);
   }
 
   private static int getIndex(boolean physical, boolean incompleteCode){
@@ -169,10 +201,19 @@ public class ResolveCache {
     int index = getIndex(physical, incompleteCode);
     Reference<TResult> reference = maps[index].get(ref);
     if(reference == null) return null;
+    if (reference instanceof CachedResult) {
+      ((CachedResult)reference).myRequested = true;
+    }
     return reference.get();
   }
 
-  private <TRef extends PsiReference, TResult> void cache(TRef ref, TResult result, Map<? super TRef,Reference<TResult>>[] maps, boolean physical, boolean incompleteCode, final int clearCountOnStart) {
+  private <TRef extends PsiReference, TResult> void cache(TRef ref,
+                                                          TResult result,
+                                                          Map<? super TRef,Reference<TResult>>[] maps,
+                                                          AtomicInteger[] sizes,
+                                                          boolean physical,
+                                                          boolean incompleteCode,
+                                                          final int clearCountOnStart) {
     if (clearCountOnStart != myClearCount.intValue() && result != null) return;
     PsiElement element = result instanceof ResolveResult ? ((ResolveResult)result).getElement() : null;
     LOG.assertTrue(element == null || element.isValid(), result);
@@ -185,6 +226,60 @@ public class ResolveCache {
       return;
     }
 
-    map.put(ref, new SoftReference<TResult>(result/*, myQueue*/));
+    if (myMaxSize <= 0) {
+      map.put(ref, new SoftReference<TResult>(result/*, myQueue*/));
+      return;
+    }
+    map.put(ref, new CachedResult<TResult>(result));
+    if (sizes[index].incrementAndGet() > myMaxSize && mySweeping.compareAndSet(false, true)) {
+      try {
+        sizes[index].set(evictNotRequested(map, myMaxSize * 3 / 4));
+      }
+      finally {
+        mySweeping.set(false);
+      }
+    }
+  }
+
+  /**
+   * Second chance eviction: removes the results which haven't been requested since the previous sweep, until the map size drops
+   * to the target, and resets the requested flag of the results it keeps.
+   * @return the number of results left in the map
+   */
+  private int evictNotRequested(@NotNull Map<?, ? extends Reference<?>> map, int targetSize) {
+    int size = map.size();
+    for (Iterator<? extends Map.Entry<?, ? extends Reference<?>>> iterator = map.entrySet().iterator(); iterator.hasNext() && size > targetSize; ) {
+      Reference<?> reference = iterator.next().getValue();
+      if (reference instanceof CachedResult && ((CachedResult)reference).myRequested) {
+        ((CachedResult)reference).myRequested = false;
+      }
+      else {
+        iterator.remove();
+        size--;
+        myEvictionCount.incrementAndGet();
+      }
+    }
+    return size;
+  }
+
+  private static class CachedResult<T> extends SoftReference<T> {
+    // written without synchronization, a lost update only makes the eviction a bit less precise
+    private boolean myRequested = true;
+
+    private CachedResult(T referent) {
+      super(referent);
+    }
+  }
+
+  @NotNull
+  public String getStatistics() {
+    String evictions = "; clears=" + myClearCount.get() + "; evictions=" + myEvictionCount.get();
+    if (!myCollectStatistics) {
+      return "Resolve cache: hits and misses aren't counted unless 'resolve.cache.statistics' registry key is set" + evictions;
+    }
+    long hits = myHitCount.get();
+    long misses = myMissCount.get();
+    long total = hits + misses;
+    return "Resolve cache: hits=" + hits + "; misses=" + misses + "; hit ratio=" + (total == 0 ? 0 : hits * 100 / total) + "%" + evictions;
   }
 }
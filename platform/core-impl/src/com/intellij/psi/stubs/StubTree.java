@@ -30,11 +30,19 @@ import java.util.Map;
 
 public class StubTree {
   private final PsiFileStub myRoot;
-  private final List<StubElement<?>> myPlainList = new ArrayList<StubElement<?>>();
+  private final List<StubElement<?>> myPlainList;
 
   public StubTree(@NotNull final PsiFileStub root) {
     myRoot = root;
-    enumerateStubs(root, myPlainList);
+    LazyStubLoader loader = ((StubBase)root).getChildrenLoader();
+    if (loader != null) {
+      // the stubs are deserialized when they're accessed, their ids are the indices in the serialized tree
+      myPlainList = loader.getPlainList();
+    }
+    else {
+      myPlainList = new ArrayList<StubElement<?>>();
+      enumerateStubs(root, myPlainList);
+    }
   }
 
   private static void enumerateStubs(final StubElement<?> root, final List<StubElement<?>> result) {
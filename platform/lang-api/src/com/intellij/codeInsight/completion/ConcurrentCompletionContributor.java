@@ -0,0 +1,28 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.completion;
+
+/**
+ * A marker interface for {@link CompletionContributor}s which are thread-safe and may be run concurrently
+ * with the adjacent (in the contributor order) contributors marked the same way, so that a slow one doesn't delay the others.<p>
+ *
+ * Such a contributor mustn't depend on the results of the other contributors, e.g. via
+ * {@link CompletionResultSet#runRemainingContributors}. The results of the group are passed on in the contributor order,
+ * and {@link CompletionResultSet#stopHere()} discards the results of the group contributors following the stopped one,
+ * although they may still run.
+ */
+public interface ConcurrentCompletionContributor {
+}
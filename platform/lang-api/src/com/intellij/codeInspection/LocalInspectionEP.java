@@ -35,6 +35,9 @@ public class LocalInspectionEP extends InspectionEP {
   @Attribute("runForWholeFile")
   public boolean runForWholeFile;
 
+  @Attribute("elementLocal")
+  public boolean elementLocal;
+
   @Attribute("unfair")
   public boolean unfair;
 }
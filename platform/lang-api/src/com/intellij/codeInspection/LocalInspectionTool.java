@@ -81,6 +81,22 @@ public abstract class LocalInspectionTool extends InspectionProfileEntry {
     return false;
   }
 
+  /**
+   * Override this method and return true if the problems your inspection reports when visiting an element depend only on the text
+   * of this element and its children, i.e. not on its siblings or parents, resolve results, the {@link LocalInspectionToolSession}
+   * or the problems reported in {@link #inspectionFinished(LocalInspectionToolSession, ProblemsHolder)}.
+   * <p/>
+   * For example, 'C-style array declaration' inspection looks only at the variable it is called for.
+   * <p/>
+   * On-the-fly highlighting reuses the problems found by such an inspection for the elements lying outside of the modified range
+   * instead of visiting them again, so typing inside a large method doesn't re-inspect the unchanged statements.
+   *
+   * @return true if the problems found for an element depend on this element subtree only.
+   */
+  public boolean isElementLocal() {
+    return false;
+  }
+
   /**
    * Override this to report problems at file level.
    *
@@ -19,13 +19,14 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.Consumer;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class CompositeFilter implements Filter, FilterMixin {
-  private final List<Filter> myFilters = new ArrayList<Filter>();
+  private final List<Filter> myFilters = ContainerUtil.createEmptyCOWList();
   private boolean myIsAnyHeavy;
   private final DumbService myDumbService;
 
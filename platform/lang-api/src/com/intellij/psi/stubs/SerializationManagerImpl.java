@@ -24,8 +24,11 @@ import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IStubFileElementType;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.DataOutputStream;
 import com.intellij.util.io.PersistentStringEnumerator;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
@@ -168,23 +171,19 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
 
   public void serialize(StubElement rootStub, OutputStream stream) {
     if (!mySerializersLoaded) initSerializers();
-    StubOutputStream stubOutputStream = new StubOutputStream(stream, myNameStorage);
-    doSerialize(rootStub, stubOutputStream);
-  }
-
-  private void doSerialize(final StubElement rootStub, final StubOutputStream stream) {
+    BufferExposingByteArrayOutputStream data = new BufferExposingByteArrayOutputStream();
+    StubOutputStream stubOutputStream = new StubOutputStream(data, myNameStorage);
+    TIntArrayList table = new TIntArrayList();
     try {
-      final StubSerializer serializer = getSerializer(rootStub);
-
-      DataInputOutputUtil.writeINT(stream, getClassId(serializer));
-      serializer.serialize(rootStub, stream);
+      doSerialize(rootStub, stubOutputStream, data, table);
 
-      final List<StubElement> children = rootStub.getChildrenStubs();
-      final int childrenSize = children.size();
-      DataInputOutputUtil.writeINT(stream, childrenSize);
-      for (int i = 0; i < childrenSize; ++i) {
-        doSerialize(children.get(i), stream);
+      // the offset and the descendant count of every stub precede the data, see LazyStubLoader
+      DataOutputStream out = new DataOutputStream(stream);
+      out.writeInt(table.size() / 2);
+      for (int i = 0; i < table.size(); i++) {
+        out.writeInt(table.get(i));
       }
+      out.write(data.getInternalBuffer(), 0, data.size());
     }
     catch (IOException e) {
       LOG.info(e);
@@ -192,6 +191,23 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     }
   }
 
+  private void doSerialize(final StubElement rootStub, final StubOutputStream stream, final BufferExposingByteArrayOutputStream data,
+                           final TIntArrayList table) throws IOException {
+    final int index = table.size();
+    table.add(data.size());
+    table.add(0);
+
+    final StubSerializer serializer = getSerializer(rootStub);
+    DataInputOutputUtil.writeINT(stream, getClassId(serializer));
+    serializer.serialize(rootStub, stream);
+
+    final List<StubElement> children = rootStub.getChildrenStubs();
+    for (int i = 0, childrenSize = children.size(); i < childrenSize; ++i) {
+      doSerialize(children.get(i), stream, data, table);
+    }
+    table.set(index + 1, (table.size() - index) / 2 - 1);
+  }
+
   public StubSerializer getSerializer(final StubElement rootStub) {
     if (rootStub instanceof PsiFileStub) {
       final PsiFileStub fileStub = (PsiFileStub)rootStub;
@@ -202,10 +218,12 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
   }
 
   public StubElement deserialize(InputStream stream) {
-    StubInputStream inputStream = new StubInputStream(stream, myNameStorage);
-    if (!mySerializersLoaded) initSerializers();
     try {
-      return deserialize(inputStream, null);
+      final byte[] bytes = FileUtil.loadBytes(stream);
+      final LazyStubLoader loader = createLoader(bytes, bytes.length);
+      final StubElement root = loader.loadRoot();
+      loader.loadAll(root);
+      return root;
     }
     catch (IOException e) {
       myNameStorageCrashed.set(true);
@@ -214,18 +232,31 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     }
   }
 
-  private StubElement deserialize(StubInputStream stream, StubElement parentStub) throws IOException {
-    final int id = DataInputOutputUtil.readINT(stream);
-    final StubSerializer serializer = getClassById(id);
-    
-    assert serializer != null : "No serializer registered for stub: ID=" + id + "; parent stub class=" + (parentStub != null? parentStub.getClass().getName() : "null");
-    
-    StubElement stub = serializer.deserialize(stream, parentStub);
-    int childCount = DataInputOutputUtil.readINT(stream);
-    for (int i = 0; i < childCount; i++) {
-      deserialize(stream, stub);
+  public StubElement deserializeLazily(byte[] bytes, int length) {
+    try {
+      return createLoader(bytes, length).loadRoot();
     }
-    return stub;
+    catch (IOException e) {
+      myNameStorageCrashed.set(true);
+      LOG.info(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private LazyStubLoader createLoader(byte[] bytes, int length) {
+    if (!mySerializersLoaded) initSerializers();
+    return new LazyStubLoader(bytes, length, myNameStorage) {
+      @Override
+      protected StubSerializer getSerializer(int id) {
+        return getClassById(id);
+      }
+
+      @Override
+      protected void onReadError(@NotNull IOException e) {
+        myNameStorageCrashed.set(true);
+        LOG.info(e);
+      }
+    };
   }
 
   private int getClassId(final StubSerializer serializer) {
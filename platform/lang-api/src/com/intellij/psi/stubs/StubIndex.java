@@ -24,6 +24,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
@@ -50,4 +51,17 @@ public abstract class StubIndex {
 
   @NotNull
   public abstract <Key> Collection<Key> getAllKeys(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Project project);
+
+  public <Key> boolean processAllKeys(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Project project, @NotNull Processor<Key> processor) {
+    return ContainerUtil.process(getAllKeys(indexKey, project), processor);
+  }
+
+  /**
+   * A cheap check to skip lookups of the keys which are surely absent from the index.
+   *
+   * @return false if the index has no values for the key in any scope, true if it may have some
+   */
+  public <Key> boolean mayContainKey(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Key key, @NotNull Project project) {
+    return true;
+  }
 }
@@ -17,10 +17,13 @@ package com.intellij.codeInsight.completion.impl;
 
 import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.*;
+import com.intellij.concurrency.JobUtil;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerAdapter;
@@ -34,10 +37,12 @@ import com.intellij.psi.WeighingService;
 import com.intellij.psi.impl.DebugUtil;
 import com.intellij.psi.impl.source.tree.injected.InjectedLanguageUtil;
 import com.intellij.util.Consumer;
+import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author peter
@@ -85,7 +90,8 @@ public class CompletionServiceImpl extends CompletionService{
     final PsiElement position = parameters.getPosition();
     final String prefix = CompletionData.findPrefixStatic(position, parameters.getOffset());
     final String textBeforePosition = parameters.getPosition().getContainingFile().getText().substring(0, parameters.getOffset());
-    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    // contributors run concurrently get a wrapper of the completion indicator
+    ProgressIndicator indicator = ProgressWrapper.unwrap(ProgressManager.getInstance().getProgressIndicator());
     if (!(indicator instanceof CompletionProgressIndicator)) {
       throw new AssertionError("createResultSet may be invoked only from completion thread: " + indicator + "!=" + getCurrentCompletion() + "; phase set at " + ourPhaseTrace);
     }
@@ -95,6 +101,129 @@ public class CompletionServiceImpl extends CompletionService{
     return new CompletionResultSetImpl(consumer, textBeforePosition, matcher, contributor,parameters, sorter, process, null);
   }
 
+  @Override
+  public void getVariantsFromContributors(final CompletionParameters parameters,
+                                          @Nullable final CompletionContributor from,
+                                          final Consumer<CompletionResult> consumer) {
+    final List<CompletionContributor> contributors = CompletionContributor.forParameters(parameters);
+    final boolean dumb = DumbService.getInstance(parameters.getPosition().getProject()).isDumb();
+
+    int i = contributors.indexOf(from) + 1;
+    while (i < contributors.size()) {
+      List<CompletionContributor> group = new ArrayList<CompletionContributor>();
+      for (; i < contributors.size(); i++) {
+        final CompletionContributor contributor = contributors.get(i);
+        if (dumb && !DumbService.isDumbAware(contributor)) continue;
+        if (!group.isEmpty() && !(isConcurrent(group.get(0)) && isConcurrent(contributor))) break;
+        group.add(contributor);
+      }
+      if (group.isEmpty()) return;
+
+      boolean proceed = group.size() == 1 ? runContributor(parameters, consumer, group.get(0)) : runConcurrently(parameters, consumer, group);
+      if (!proceed) {
+        return;
+      }
+    }
+  }
+
+  private static boolean isConcurrent(CompletionContributor contributor) {
+    return contributor instanceof ConcurrentCompletionContributor;
+  }
+
+  private boolean runConcurrently(final CompletionParameters parameters,
+                                  final Consumer<CompletionResult> consumer,
+                                  final List<CompletionContributor> group) {
+    final OrderedResults results = new OrderedResults(consumer, group.size());
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    boolean completed = JobUtil.invokeConcurrentlyUnderProgress(group, indicator, false, new Processor<CompletionContributor>() {
+      @Override
+      public boolean process(CompletionContributor contributor) {
+        final int index = group.indexOf(contributor);
+        boolean proceed = runContributor(parameters, new Consumer<CompletionResult>() {
+          @Override
+          public void consume(CompletionResult result) {
+            results.consume(index, result);
+          }
+        }, contributor);
+        results.finished(index, !proceed);
+        return true;
+      }
+    });
+    ProgressManager.checkCanceled();
+    return completed && !results.isStopped();
+  }
+
+  /**
+   * Passes the results of concurrently run contributors to the consumer in the same order as if they were run one by one.
+   * The results of the first unfinished contributor are passed immediately, the results of the next ones are held back
+   * until all the contributors before them finish, and discarded if one of those stops the completion.
+   */
+  private static class OrderedResults {
+    private final Consumer<CompletionResult> myConsumer;
+    private final List<List<CompletionResult>> myPending;
+    private final boolean[] myFinished;
+    private final boolean[] myStopped;
+    private int myCurrent;
+    private boolean myStoppedCompletion;
+
+    private OrderedResults(Consumer<CompletionResult> consumer, int count) {
+      myConsumer = consumer;
+      myPending = new ArrayList<List<CompletionResult>>(count);
+      for (int i = 0; i < count; i++) {
+        myPending.add(new ArrayList<CompletionResult>());
+      }
+      myFinished = new boolean[count];
+      myStopped = new boolean[count];
+    }
+
+    synchronized void consume(int index, CompletionResult result) {
+      if (myStoppedCompletion) return;
+
+      if (index == myCurrent) {
+        myConsumer.consume(result);
+      }
+      else {
+        myPending.get(index).add(result);
+      }
+    }
+
+    synchronized void finished(int index, boolean stopped) {
+      myFinished[index] = true;
+      myStopped[index] = stopped;
+      while (!myStoppedCompletion && myCurrent < myFinished.length && myFinished[myCurrent]) {
+        if (myStopped[myCurrent]) {
+          myStoppedCompletion = true;
+          break;
+        }
+        myCurrent++;
+        if (myCurrent < myFinished.length) {
+          for (CompletionResult result : myPending.get(myCurrent)) {
+            myConsumer.consume(result);
+          }
+          myPending.set(myCurrent, null);
+        }
+      }
+    }
+
+    synchronized boolean isStopped() {
+      return myStoppedCompletion;
+    }
+  }
+
+  /**
+   * @return false if the contributor has stopped the completion
+   */
+  private boolean runContributor(CompletionParameters parameters, Consumer<CompletionResult> consumer, CompletionContributor contributor) {
+    long start = System.currentTimeMillis();
+    final CompletionResultSet result = createResultSet(parameters, consumer, contributor);
+    contributor.fillCompletionVariants(parameters, result);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(contributor + " took " + (System.currentTimeMillis() - start) + "ms" +
+                (isConcurrent(contributor) ? " in " + Thread.currentThread().getName() : ""));
+    }
+    return !result.isStopped();
+  }
+
   @Override
   public CompletionProgressIndicator getCurrentCompletion() {
     if (isPhase(CompletionPhase.BgCalculation.class, CompletionPhase.ItemsCalculated.class, CompletionPhase.CommittingDocuments.class,
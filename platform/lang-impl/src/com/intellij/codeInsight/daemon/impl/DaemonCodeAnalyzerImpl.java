@@ -35,6 +35,7 @@ import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.editor.ex.EditorMarkupModel;
 import com.intellij.openapi.editor.ex.MarkupModelEx;
@@ -112,6 +113,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
 
   private volatile boolean allowToInterrupt = true;
   private StatusBarUpdater myStatusBarUpdater;
+  private PersistentHighlightingCache myHighlightingCache; // null in tests
 
   public DaemonCodeAnalyzerImpl(Project project, DaemonCodeAnalyzerSettings daemonCodeAnalyzerSettings, EditorTracker editorTracker) {
     myProject = project;
@@ -303,6 +305,9 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
     myDaemonListeners = new DaemonListeners(myProject, this, myEditorTracker);
     Disposer.register(myProject, myDaemonListeners);
     reloadScopes();
+    if (!ApplicationManager.getApplication().isUnitTestMode()) {
+      myHighlightingCache = new PersistentHighlightingCache(myProject);
+    }
 
     myInitialized = true;
     myDisposed = false;
@@ -315,10 +320,65 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
 
     stopProcess(false);
 
+    if (myHighlightingCache != null) {
+      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+        if (editor.getProject() == myProject) {
+          cacheHighlights(editor.getDocument());
+        }
+      }
+      myHighlightingCache.close();
+      myHighlightingCache = null;
+    }
+
     myDisposed = true;
     myLastSettings = null;
   }
 
+  /**
+   * Remembers the highlighting of the document which is about to be closed, provided the daemon has finished with it.
+   */
+  void cacheHighlights(@NotNull Document document) {
+    PersistentHighlightingCache cache = myHighlightingCache;
+    if (cache != null && myFileStatusMap.allDirtyScopesAreNull(document)) {
+      cache.save(document);
+    }
+  }
+
+  /**
+   * Shows the highlighting remembered when the document was closed last time, until the daemon recomputes it.
+   */
+  void restoreCachedHighlights(@NotNull final Document document) {
+    final PersistentHighlightingCache cache = myHighlightingCache;
+    if (cache == null || !canRestoreCachedHighlights(document)) return;
+
+    final Application application = ApplicationManager.getApplication();
+    application.executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        final PersistentHighlightingCache.FileHighlights highlights =
+          application.runReadAction(new Computable<PersistentHighlightingCache.FileHighlights>() {
+            @Override
+            public PersistentHighlightingCache.FileHighlights compute() {
+              return myProject.isDisposed() ? null : cache.load(document);
+            }
+          });
+        if (highlights == null) return;
+        application.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (cache == myHighlightingCache && canRestoreCachedHighlights(document)) {
+              cache.apply(document, highlights);
+            }
+          }
+        }, myProject.getDisposed());
+      }
+    });
+  }
+
+  private boolean canRestoreCachedHighlights(@NotNull Document document) {
+    return !myFileStatusMap.allDirtyScopesAreNull(document) && getHighlights(document, null, myProject).isEmpty();
+  }
+
   void repaintErrorStripeRenderer(Editor editor) {
     if (!myProject.isInitialized()) return;
     final Document document = editor.getDocument();
@@ -431,7 +491,9 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
   public void restart(@NotNull PsiFile file) {
     Document document = PsiDocumentManager.getInstance(myProject).getCachedDocument(file);
     if (document == null) return;
-    myFileStatusMap.markFileScopeDirty(document, new TextRange(0, document.getTextLength()), file.getTextLength());
+    TextRange wholeFile = new TextRange(0, document.getTextLength());
+    myFileStatusMap.markFileChanged(document, wholeFile, file.getTextLength());
+    myFileStatusMap.markFileScopeDirty(document, wholeFile, file.getTextLength());
     stopProcess(true);
   }
 
@@ -462,6 +524,11 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
            myFileStatusMap.getFileDirtyScope(document, Pass.UPDATE_ALL) == null;
   }
 
+  @NotNull
+  public DaemonProfiler getProfiler() {
+    return myPassExecutorService.getProfiler();
+  }
+
   public FileStatusMap getFileStatusMap() {
     return myFileStatusMap;
   }
@@ -478,6 +545,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
     if (!allowToInterrupt) throw new RuntimeException("Cannot interrupt daemon");
 
     cancelUpdateProgress(toRestartAlarm, "by Stop process");
+    if (toRestartAlarm) myPassExecutorService.getProfiler().restarted();
     myAlarm.cancelAllRequests();
     boolean restart = toRestartAlarm && !myDisposed && myInitialized;
     if (restart) {
@@ -171,8 +171,20 @@ class DaemonListeners implements Disposable {
           LOG.debug("Not worth: " + file);
           return;
         }
+        myDaemonCodeAnalyzer.restoreCachedHighlights(document);
         myDaemonCodeAnalyzer.repaintErrorStripeRenderer(editor);
       }
+
+      @Override
+      public void editorReleased(EditorFactoryEvent event) {
+        Editor editor = event.getEditor();
+        Document document = editor.getDocument();
+        Project editorProject = editor.getProject();
+        if (editorProject != myProject || EditorFactory.getInstance().getEditors(document, myProject).length > 1) return;
+        if (worthBothering(document, editorProject)) {
+          myDaemonCodeAnalyzer.cacheHighlights(document);
+        }
+      }
     };
     EditorFactory.getInstance().addEditorFactoryListener(editorFactoryListener, this);
 
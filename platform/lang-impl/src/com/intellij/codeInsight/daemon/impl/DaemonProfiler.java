@@ -0,0 +1,320 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.TextEditorHighlightingPass;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.TObjectLongHashMap;
+import gnu.trove.TObjectLongProcedure;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects timings of highlighting passes run by {@link PassExecutorService} when the "daemon.profiler.enabled" registry key is set.
+ * For every pass it remembers the time spent in the queue, waiting for the read action and collecting information,
+ * the time when the information was applied to the editor, whether the pass was canceled and the number of highlights it produced.
+ * Passes can also report the time spent in their parts (annotators, inspections) via {@link PassRecord#addSubTaskTime}.
+ *
+ * @see com.intellij.internal.DumpHighlightingPassesTimelineAction
+ */
+public class DaemonProfiler {
+  private static final int MAX_RECORDS = 2000;
+  private static final int TIMELINE_WIDTH = 80;
+
+  private static final ThreadLocal<PassRecord> ourCurrentRecord = new ThreadLocal<PassRecord>();
+
+  private final LinkedList<PassRecord> myRecords = new LinkedList<PassRecord>(); // guarded by myRecords
+  private final AtomicInteger myRestartCount = new AtomicInteger();
+
+  public static boolean isEnabled() {
+    return Registry.is("daemon.profiler.enabled");
+  }
+
+  @Nullable
+  PassRecord createRecord(@NotNull TextEditorHighlightingPass pass) {
+    if (!isEnabled()) return null;
+    PassRecord record = new PassRecord(pass);
+    synchronized (myRecords) {
+      myRecords.addLast(record);
+      if (myRecords.size() > MAX_RECORDS) {
+        myRecords.removeFirst();
+      }
+    }
+    return record;
+  }
+
+  void restarted() {
+    if (isEnabled()) {
+      myRestartCount.incrementAndGet();
+    }
+  }
+
+  public int getRestartCount() {
+    return myRestartCount.get();
+  }
+
+  /**
+   * @return the record of the pass which is collecting information in the current thread, or null if profiling is disabled
+   */
+  @Nullable
+  public static PassRecord getCurrentRecord() {
+    return ourCurrentRecord.get();
+  }
+
+  static void setCurrentRecord(@Nullable PassRecord record) {
+    if (record == null) {
+      ourCurrentRecord.remove();
+    }
+    else {
+      ourCurrentRecord.set(record);
+    }
+  }
+
+  @NotNull
+  public List<PassRecord> getRecords() {
+    synchronized (myRecords) {
+      return new ArrayList<PassRecord>(myRecords);
+    }
+  }
+
+  public void clear() {
+    synchronized (myRecords) {
+      myRecords.clear();
+    }
+    myRestartCount.set(0);
+  }
+
+  /**
+   * Renders the recorded passes as a text timeline, one line per pass.
+   * '.' marks the time spent in the queue, '#' the time spent collecting information and '|' the moment the result was applied.
+   */
+  @NotNull
+  public String dumpTimeline() {
+    List<PassRecord> records = getRecords();
+    StringBuilder result = new StringBuilder();
+    result.append("Restarts: ").append(getRestartCount()).append("; passes: ").append(records.size()).append('\n');
+    if (records.isEmpty()) return result.toString();
+
+    long start = Long.MAX_VALUE;
+    long end = 0;
+    for (PassRecord record : records) {
+      start = Math.min(start, record.mySubmitted == 0 ? record.myCreated : record.mySubmitted);
+      end = Math.max(end, record.getEndTime());
+    }
+    double scale = (double)TIMELINE_WIDTH / Math.max(1, end - start);
+
+    for (PassRecord record : records) {
+      char[] line = new char[TIMELINE_WIDTH + 1];
+      Arrays.fill(line, ' ');
+      fill(line, record.mySubmitted, record.myStarted, start, scale, '.');
+      fill(line, record.myStarted, record.myCollected == 0 ? record.getEndTime() : record.myCollected, start, scale, '#');
+      if (record.myApplied != 0) {
+        line[position(record.myApplied, start, scale)] = '|';
+      }
+      result.append('[').append(line).append("] ");
+      result.append(toMillis(record.mySubmitted == 0 ? 0 : record.mySubmitted - start)).append("ms ");
+      record.appendDescription(result);
+      result.append('\n');
+      record.appendSubTasks(result, "    ");
+    }
+    return result.toString();
+  }
+
+  /**
+   * Dumps the recorded passes in comma separated format suitable for comparing results between builds.
+   * Fields containing commas, quotes or line breaks are quoted as described in RFC 4180.
+   */
+  @NotNull
+  public String dumpCsv() {
+    StringBuilder result = new StringBuilder();
+    result.append("pass,id,file,queue wait ms,read action wait ms,run ms,apply delay ms,canceled,highlights\n");
+    for (PassRecord record : getRecords()) {
+      appendCsvField(result, record.myPassName).append(',')
+        .append(record.myPassId).append(',');
+      appendCsvField(result, record.myFileName).append(',')
+        .append(toMillis(record.getQueueWait())).append(',')
+        .append(toMillis(record.getReadActionWait())).append(',')
+        .append(toMillis(record.getRunTime())).append(',')
+        .append(toMillis(record.getApplyDelay())).append(',')
+        .append(record.myCanceled).append(',')
+        .append(record.myHighlightCount).append('\n');
+    }
+    return result.toString();
+  }
+
+  @NotNull
+  private static StringBuilder appendCsvField(@NotNull StringBuilder result, @NotNull String field) {
+    if (StringUtil.containsAnyChar(field, ",\"\r\n")) {
+      return result.append('"').append(StringUtil.replace(field, "\"", "\"\"")).append('"');
+    }
+    return result.append(field);
+  }
+
+  private static void fill(char[] line, long from, long to, long start, double scale, char c) {
+    if (from == 0 || to == 0) return;
+    int fromPos = position(from, start, scale);
+    int toPos = position(to, start, scale);
+    for (int i = fromPos; i <= toPos; i++) {
+      line[i] = c;
+    }
+  }
+
+  private static int position(long time, long start, double scale) {
+    return Math.max(0, Math.min(TIMELINE_WIDTH, (int)((time - start) * scale)));
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos / 1000000;
+  }
+
+  public static class PassRecord {
+    private final String myPassName;
+    private final int myPassId;
+    private final String myFileName;
+    private final long myCreated = System.nanoTime();
+    private volatile long mySubmitted;
+    private volatile long myStarted;
+    private volatile long myReadActionStarted;
+    private volatile long myCollected;
+    private volatile long myApplied;
+    private volatile boolean myCanceled;
+    private volatile int myHighlightCount = -1;
+    private final TObjectLongHashMap<String> mySubTaskTimes = new TObjectLongHashMap<String>(); // guarded by mySubTaskTimes
+
+    private PassRecord(@NotNull TextEditorHighlightingPass pass) {
+      myPassName = StringUtil.getShortName(pass.getClass());
+      myPassId = pass.getId();
+      Document document = pass.getDocument();
+      VirtualFile file = document == null ? null : FileDocumentManager.getInstance().getFile(document);
+      myFileName = file == null ? "" : file.getName();
+    }
+
+    void submitted() {
+      mySubmitted = System.nanoTime();
+    }
+
+    void started() {
+      myStarted = System.nanoTime();
+    }
+
+    void readActionStarted() {
+      myReadActionStarted = System.nanoTime();
+    }
+
+    void collected() {
+      myCollected = System.nanoTime();
+    }
+
+    void applied(@NotNull TextEditorHighlightingPass pass) {
+      myApplied = System.nanoTime();
+      List<HighlightInfo> infos = pass.getInfos();
+      if (infos != null) {
+        myHighlightCount = infos.size();
+      }
+    }
+
+    void canceled() {
+      myCanceled = true;
+    }
+
+    /**
+     * Accumulates time spent in some part of the pass, e.g. in an annotator or a local inspection.
+     */
+    public void addSubTaskTime(@NonNls @NotNull String name, long nanos) {
+      synchronized (mySubTaskTimes) {
+        if (!mySubTaskTimes.adjustValue(name, nanos)) {
+          mySubTaskTimes.put(name, nanos);
+        }
+      }
+    }
+
+    public long getQueueWait() {
+      return mySubmitted == 0 || myStarted == 0 ? 0 : myStarted - mySubmitted;
+    }
+
+    public long getReadActionWait() {
+      return myStarted == 0 || myReadActionStarted == 0 ? 0 : myReadActionStarted - myStarted;
+    }
+
+    public long getRunTime() {
+      long start = myReadActionStarted == 0 ? myStarted : myReadActionStarted;
+      return start == 0 || myCollected == 0 ? 0 : myCollected - start;
+    }
+
+    public long getApplyDelay() {
+      return myCollected == 0 || myApplied == 0 ? 0 : myApplied - myCollected;
+    }
+
+    public boolean isCanceled() {
+      return myCanceled;
+    }
+
+    private long getEndTime() {
+      return Math.max(Math.max(myCreated, mySubmitted), Math.max(Math.max(myStarted, myCollected), myApplied));
+    }
+
+    private void appendDescription(@NotNull StringBuilder result) {
+      result.append(myPassName).append(" (").append(myPassId).append(") ").append(myFileName)
+        .append(": queue=").append(toMillis(getQueueWait()))
+        .append("ms read action=").append(toMillis(getReadActionWait()))
+        .append("ms run=").append(toMillis(getRunTime()))
+        .append("ms apply=").append(toMillis(getApplyDelay())).append("ms");
+      if (myHighlightCount >= 0) {
+        result.append(" highlights=").append(myHighlightCount);
+      }
+      if (myCanceled) {
+        result.append(" CANCELED");
+      }
+    }
+
+    private void appendSubTasks(@NotNull final StringBuilder result, @NotNull final String indent) {
+      final List<Map.Entry<String, Long>> subTasks = new ArrayList<Map.Entry<String, Long>>();
+      synchronized (mySubTaskTimes) {
+        mySubTaskTimes.forEachEntry(new TObjectLongProcedure<String>() {
+          @Override
+          public boolean execute(String name, long time) {
+            subTasks.add(new AbstractMap.SimpleEntry<String, Long>(name, time));
+            return true;
+          }
+        });
+      }
+      Collections.sort(subTasks, new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+          return o2.getValue().compareTo(o1.getValue());
+        }
+      });
+      for (Map.Entry<String, Long> subTask : subTasks) {
+        result.append(indent).append(subTask.getKey()).append(": ").append(toMillis(subTask.getValue())).append("ms\n");
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+      appendDescription(result);
+      return result.toString();
+    }
+  }
+}
@@ -144,6 +144,7 @@ public class DefaultHighlightVisitor implements HighlightVisitor, DumbAware {
     List<Annotator> annotators = cachedAnnotators.get(element.getLanguage());
     if (annotators.isEmpty()) return;
     final boolean dumb = myDumbService.isDumb();
+    DaemonProfiler.PassRecord record = DaemonProfiler.getCurrentRecord();
 
     //noinspection ForLoopReplaceableByForEach
     for (int i = 0; i < annotators.size(); i++) {
@@ -154,7 +155,14 @@ public class DefaultHighlightVisitor implements HighlightVisitor, DumbAware {
 
       ProgressManager.checkCanceled();
 
-      annotator.annotate(element, myAnnotationHolder);
+      if (record == null) {
+        annotator.annotate(element, myAnnotationHolder);
+      }
+      else {
+        long start = System.nanoTime();
+        annotator.annotate(element, myAnnotationHolder);
+        record.addSubTaskTime(annotator.getClass().getName(), System.nanoTime() - start);
+      }
     }
   }
 
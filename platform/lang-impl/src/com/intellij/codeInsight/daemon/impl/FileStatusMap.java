@@ -95,6 +95,8 @@ public class FileStatusMap implements Disposable {
     private boolean wolfPassFinished;
     // if contains the special value "WHOLE_FILE_MARKER" then the corresponding range is (0, document length)
     private final TIntObjectHashMap<RangeMarker> dirtyScopes = new TIntObjectHashMap<RangeMarker>();
+    // range actually modified since the local inspections pass finished, unlike its dirty scope it is not extended to the enclosing code block
+    private RangeMarker changedRange;
     private boolean errorFound;
 
     private FileStatus(@NotNull Project project) {
@@ -105,12 +107,18 @@ public class FileStatusMap implements Disposable {
       dirtyScopes.put(Pass.UPDATE_ALL, WHOLE_FILE_MARKER);
       dirtyScopes.put(Pass.EXTERNAL_TOOLS, WHOLE_FILE_MARKER);
       dirtyScopes.put(Pass.LOCAL_INSPECTIONS, WHOLE_FILE_MARKER);
+      markWholeFileChanged();
       TextEditorHighlightingPassRegistrarImpl registrar = (TextEditorHighlightingPassRegistrarImpl) TextEditorHighlightingPassRegistrar.getInstance(project);
       for(DirtyScopeTrackingHighlightingPassFactory factory: registrar.getDirtyScopeTrackingFactories()) {
         dirtyScopes.put(factory.getPassId(), WHOLE_FILE_MARKER);
       }
     }
 
+    private void markWholeFileChanged() {
+      if (changedRange != null && changedRange != WHOLE_FILE_MARKER) changedRange.dispose();
+      changedRange = WHOLE_FILE_MARKER;
+    }
+
     public boolean allDirtyScopesAreNull() {
       for (Object o : dirtyScopes.getValues()) {
         if (o != null) return false;
@@ -137,6 +145,7 @@ public class FileStatusMap implements Disposable {
       s.append("defensivelyMarked = ").append(defensivelyMarked);
       s.append("; wolfPassFinfished = ").append(wolfPassFinished);
       s.append("; errorFound = ").append(errorFound);
+      s.append("; changedRange = ").append(changedRange == WHOLE_FILE_MARKER ? "Whole file" : changedRange);
       s.append("; dirtyScopes: (");
       dirtyScopes.forEachEntry(new TIntObjectProcedure<RangeMarker>() {
         @Override
@@ -179,6 +188,10 @@ public class FileStatusMap implements Disposable {
         status.wolfPassFinished = true;
       }
       else if (status.dirtyScopes.containsKey(passId)) {
+        if (passId == Pass.LOCAL_INSPECTIONS && status.changedRange != null) {
+          if (status.changedRange != WHOLE_FILE_MARKER) status.changedRange.dispose();
+          status.changedRange = null;
+        }
         RangeMarker marker = status.dirtyScopes.get(passId);
         if (marker != null) {
           if (marker != WHOLE_FILE_MARKER) marker.dispose();
@@ -229,7 +242,37 @@ public class FileStatusMap implements Disposable {
           marker.dispose();
         }
         status.dirtyScopes.put(passId, WHOLE_FILE_MARKER);
+        if (passId == Pass.LOCAL_INSPECTIONS) {
+          status.markWholeFileChanged();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the range modified since the local inspections pass has finished for the document last time,
+   *         whole file if unknown, null if the document has not been changed since then
+   */
+  @Nullable
+  public TextRange getChangedRange(@NotNull Document document) {
+    synchronized(myDocumentToStatusMap) {
+      FileStatus status = myDocumentToStatusMap.get(document);
+      if (status == null || status.defensivelyMarked) {
+        return new TextRange(0, document.getTextLength());
       }
+      RangeMarker marker = status.changedRange;
+      return marker == null ? null : marker != WHOLE_FILE_MARKER && marker.isValid() ? TextRange.create(marker) : new TextRange(0, document.getTextLength());
+    }
+  }
+
+  /**
+   * Records the exact range of the PSI change, in addition to the dirty scope which is usually the whole enclosing code block.
+   */
+  public void markFileChanged(@NotNull Document document, @NotNull TextRange changedRange, int fileLength) {
+    synchronized(myDocumentToStatusMap) {
+      FileStatus status = myDocumentToStatusMap.get(document);
+      if (status == null) return; // all dirty already
+      status.changedRange = combineScopes(status.changedRange, changedRange, fileLength, document);
     }
   }
 
@@ -54,6 +54,7 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.IndexNotReadyException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.problems.Problem;
 import com.intellij.problems.WolfTheProblemSolver;
@@ -65,6 +66,7 @@ import com.intellij.psi.search.TodoItem;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ConcurrentHashSet;
 import com.intellij.util.containers.TransferToEDTQueue;
 import com.intellij.util.ui.UIUtil;
 import gnu.trove.THashMap;
@@ -81,6 +83,8 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.GeneralHighlightingPass");
   static final String PRESENTABLE_NAME = DaemonBundle.message("pass.syntax");
   private static final Key<Boolean> HAS_ERROR_ELEMENT = Key.create("HAS_ERROR_ELEMENT");
+  // the number of elements worth cloning the highlight visitors for in the concurrent mode
+  private static final int MIN_CONCURRENT_CHUNK_SIZE = 50;
 
   private final int myStartOffset;
   private final int myEndOffset;
@@ -562,12 +566,17 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
                                  @NotNull final HighlightVisitor[] visitors,
                                  @NotNull final Set<HighlightInfo> gotHighlights,
                                  final boolean forceHighlightParents) {
+    if (isConcurrentHighlightingEnabled()) {
+      collectHighlightsConcurrently(elements1, after1, elements2, progress, visitors, gotHighlights, forceHighlightParents);
+      return;
+    }
     final Set<PsiElement> skipParentsSet = new THashSet<PsiElement>();
 
     // TODO - add color scheme to holder
     final HighlightInfoHolder holder = createInfoHolder(myFile);
 
     final int chunkSize = Math.max(1, (elements1.size()+elements2.size()) / 100); // one percent precision is enough
+    final DaemonProfiler.PassRecord record = DaemonProfiler.getCurrentRecord();
 
     final Runnable action = new Runnable() {
       @Override
@@ -580,65 +589,206 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
             PsiElement element = elements.get(i);
             progress.checkCanceled();
 
-            if (element != myFile && !skipParentsSet.isEmpty() && element.getFirstChild() != null && skipParentsSet.contains(element)) {
-              skipParentsSet.add(element.getParent());
-              continue;
-            }
-
-            if (element instanceof PsiErrorElement) {
-              myHasErrorElement = true;
-            }
-            holder.clear();
-
-            for (final HighlightVisitor visitor : visitors) {
-              try {
-                visitor.visit(element);
-              }
-              catch (ProcessCanceledException e) {
-                throw e;
-              }
-              catch (IndexNotReadyException e) {
-                throw e;
-              }
-              catch (WolfTheProblemSolverImpl.HaveGotErrorException e) {
-                throw e;
-              }
-              catch (Exception e) {
-                if (!failed) {
-                  LOG.error(e);
-                }
-                failed = true;
-              }
-            }
+            failed = visitElement(element, visitors, holder, skipParentsSet, gotHighlights, forceHighlightParents, progress, record, failed);
 
             if (i == nextLimit) {
               advanceProgress(chunkSize);
               nextLimit = i + chunkSize;
             }
+          }
+          advanceProgress(elements.size() - (nextLimit-chunkSize));
+          if (elements == elements1) after1.run();
+        }
+      }
+    };
 
-            //noinspection ForLoopReplaceableByForEach
-            for (int j = 0; j < holder.size(); j++) {
-              final HighlightInfo info = holder.get(j);
-              assert info != null;
-              // have to filter out already obtained highlights
-              if (!gotHighlights.add(info)) continue;
-              boolean isError = info.getSeverity() == HighlightSeverity.ERROR;
-              if (isError) {
-                if (!forceHighlightParents) {
-                  skipParentsSet.add(element.getParent());
-                }
-                myErrorFound = true;
+    analyzeByVisitors(progress, visitors, holder, 0, action);
+  }
+
+  private boolean isConcurrentHighlightingEnabled() {
+    return Registry.is("daemon.concurrent.highlighting") && ProgressManager.getInstance().getProgressIndicator() != null;
+  }
+
+  /**
+   * Visits second level PSI subtrees of the file concurrently, first the ones from the priority range and then the rest.
+   * Each subtree is visited by its own clones of the highlight visitors and its own info holder, while the visitors passed here
+   * stay in the analyzing state for the whole file, so the visitors which collect file-wide information (e.g. references to
+   * find unused symbols later) can share it with their clones.
+   * The file and its children are visited last, after all subtrees have been processed.
+   */
+  private void collectHighlightsConcurrently(@NotNull final List<PsiElement> elements1,
+                                             @NotNull final Runnable after1,
+                                             @NotNull final List<PsiElement> elements2,
+                                             @NotNull final ProgressIndicator progress,
+                                             @NotNull final HighlightVisitor[] visitors,
+                                             @NotNull final Set<HighlightInfo> gotHighlights,
+                                             final boolean forceHighlightParents) {
+    final Set<PsiElement> skipParentsSet = new ConcurrentHashSet<PsiElement>();
+    final Set<HighlightInfo> syncHighlights = Collections.synchronizedSet(gotHighlights);
+    final DaemonProfiler.PassRecord record = DaemonProfiler.getCurrentRecord();
+
+    final Runnable action = new Runnable() {
+      @Override
+      public void run() {
+        //noinspection unchecked
+        for (List<PsiElement> elements : new List[]{elements1, elements2}) {
+          List<PsiElement> rootElements = new ArrayList<PsiElement>();
+          List<List<PsiElement>> subtrees = splitBySubtrees(elements, rootElements);
+          Processor<List<PsiElement>> processor = new Processor<List<PsiElement>>() {
+            @Override
+            public boolean process(final List<PsiElement> subtree) {
+              final HighlightVisitor[] clones = new HighlightVisitor[visitors.length];
+              for (int i = 0; i < visitors.length; i++) {
+                clones[i] = visitors[i].clone();
               }
-              myTransferToEDTQueue.offer(Pair.create(info, progress));
+              final HighlightInfoHolder holder = createInfoHolder(myFile);
+              DaemonProfiler.PassRecord oldRecord = DaemonProfiler.getCurrentRecord();
+              DaemonProfiler.setCurrentRecord(record);
+              try {
+                analyzeByVisitors(progress, clones, holder, 0, new Runnable() {
+                  @Override
+                  public void run() {
+                    boolean failed = false;
+                    for (PsiElement element : subtree) {
+                      progress.checkCanceled();
+                      failed = visitElement(element, clones, holder, skipParentsSet, syncHighlights, forceHighlightParents, progress, record,
+                                            failed);
+                    }
+                  }
+                });
+              }
+              finally {
+                DaemonProfiler.setCurrentRecord(oldRecord);
+              }
+              advanceProgress(subtree.size());
+              return true;
             }
+          };
+          if (!JobUtil.invokeConcurrentlyUnderProgress(subtrees, progress, myFailFastOnAcquireReadAction, processor)) {
+            throw new ProcessCanceledException();
+          }
+          if (!rootElements.isEmpty()) {
+            processor.process(rootElements);
           }
-          advanceProgress(elements.size() - (nextLimit-chunkSize));
           if (elements == elements1) after1.run();
         }
       }
     };
 
-    analyzeByVisitors(progress, visitors, holder, 0, action);
+    analyzeByVisitors(progress, visitors, createInfoHolder(myFile), 0, action);
+  }
+
+  /**
+   * Groups elements by the second level PSI subtree they belong to (e.g. a member of the only top level class of a Java file),
+   * or by the first level subtree if it's not a declaration (e.g. the import list), preserving the order of elements in each group. The adjacent small subtrees are joined, so that the visitors aren't cloned
+   * for every whitespace or brace. The file and its children are put to the rootElements, to be visited after their descendants.
+   */
+  @NotNull
+  private static List<List<PsiElement>> splitBySubtrees(@NotNull List<PsiElement> elements, @NotNull List<PsiElement> rootElements) {
+    Map<PsiElement, List<PsiElement>> subtrees = new LinkedHashMap<PsiElement, List<PsiElement>>();
+    for (PsiElement element : elements) {
+      PsiElement parent = element.getParent();
+      if (element instanceof PsiFile || parent == null || parent instanceof PsiFile) {
+        rootElements.add(element);
+        continue;
+      }
+      PsiElement subtreeRoot = element;
+      while (true) {
+        PsiElement grandParent = parent.getParent();
+        if (grandParent == null || grandParent instanceof PsiFile) break;
+        subtreeRoot = parent;
+        parent = grandParent;
+      }
+      if (!(parent instanceof PsiNamedElement)) {
+        // only the members of a top level declaration are independent, the other file level constructs (e.g. import lists)
+        // are checked as a whole by the visitors
+        subtreeRoot = parent;
+      }
+      List<PsiElement> subtree = subtrees.get(subtreeRoot);
+      if (subtree == null) {
+        subtree = new ArrayList<PsiElement>();
+        subtrees.put(subtreeRoot, subtree);
+      }
+      subtree.add(element);
+    }
+
+    List<List<PsiElement>> result = new ArrayList<List<PsiElement>>();
+    List<PsiElement> chunk = null;
+    for (List<PsiElement> subtree : subtrees.values()) {
+      if (chunk == null || chunk.size() >= MIN_CONCURRENT_CHUNK_SIZE) {
+        chunk = subtree;
+        result.add(chunk);
+      }
+      else {
+        chunk.addAll(subtree);
+      }
+    }
+    return result;
+  }
+
+  // returns true if some visitor has failed
+  private boolean visitElement(@NotNull PsiElement element,
+                               @NotNull HighlightVisitor[] visitors,
+                               @NotNull HighlightInfoHolder holder,
+                               @NotNull Set<PsiElement> skipParentsSet,
+                               @NotNull Set<HighlightInfo> gotHighlights,
+                               boolean forceHighlightParents,
+                               @NotNull ProgressIndicator progress,
+                               @Nullable DaemonProfiler.PassRecord record,
+                               boolean failed) {
+    if (element != myFile && !skipParentsSet.isEmpty() && element.getFirstChild() != null && skipParentsSet.contains(element)) {
+      skipParentsSet.add(element.getParent());
+      return failed;
+    }
+
+    if (element instanceof PsiErrorElement) {
+      myHasErrorElement = true;
+    }
+    holder.clear();
+
+    for (final HighlightVisitor visitor : visitors) {
+      long start = record == null ? 0 : System.nanoTime();
+      try {
+        visitor.visit(element);
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      catch (IndexNotReadyException e) {
+        throw e;
+      }
+      catch (WolfTheProblemSolverImpl.HaveGotErrorException e) {
+        throw e;
+      }
+      catch (Exception e) {
+        if (!failed) {
+          LOG.error(e);
+        }
+        failed = true;
+      }
+      finally {
+        if (record != null) {
+          record.addSubTaskTime(visitor.getClass().getName(), System.nanoTime() - start);
+        }
+      }
+    }
+
+    //noinspection ForLoopReplaceableByForEach
+    for (int j = 0; j < holder.size(); j++) {
+      final HighlightInfo info = holder.get(j);
+      assert info != null;
+      // have to filter out already obtained highlights
+      if (!gotHighlights.add(info)) continue;
+      boolean isError = info.getSeverity() == HighlightSeverity.ERROR;
+      if (isError) {
+        if (!forceHighlightParents) {
+          skipParentsSet.add(element.getParent());
+        }
+        myErrorFound = true;
+      }
+      myTransferToEDTQueue.offer(Pair.create(info, progress));
+    }
+    return failed;
   }
 
   //private void collectHighlights(@NotNull final List<PsiElement> elements1,
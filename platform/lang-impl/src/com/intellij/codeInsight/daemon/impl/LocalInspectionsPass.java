@@ -18,6 +18,7 @@ package com.intellij.codeInsight.daemon.impl;
 
 import com.intellij.codeHighlighting.Pass;
 import com.intellij.codeInsight.daemon.DaemonBundle;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.codeInsight.daemon.HighlightDisplayKey;
 import com.intellij.codeInsight.daemon.impl.analysis.HighlightLevelUtil;
 import com.intellij.codeInsight.daemon.impl.quickfix.QuickFixAction;
@@ -47,6 +48,7 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.Trinity;
 import com.intellij.openapi.util.text.StringUtil;
@@ -87,6 +89,9 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   private final SeverityRegistrar mySeverityRegistrar;
   private final InspectionProfileWrapper myProfileWrapper;
   private boolean myFailFastOnAcquireReadAction;
+  // problems found by the element-local tools for every element of the file, see LocalInspectionTool.isElementLocal()
+  private static final Key<Map<LocalInspectionTool, Map<PsiElement, List<ProblemDescriptor>>>> ELEMENT_PROBLEMS_KEY = Key.create("ELEMENT_PROBLEMS_KEY");
+  private final Map<LocalInspectionTool, ElementProblems> myElementProblems = new THashMap<LocalInspectionTool, ElementProblems>();
 
   public LocalInspectionsPass(@NotNull PsiFile file,
                               @Nullable Document document,
@@ -143,13 +148,30 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   }
 
   public void doInspectInBatch(@NotNull InspectionManagerEx iManager, @NotNull List<InspectionProfileEntry> toolWrappers) {
+    inspectInBatch(iManager, toolWrappers);
+    addDescriptorsInBatch(iManager, toolWrappers);
+  }
+
+  /**
+   * Runs the tools in batch mode without passing the problems found to the tool wrappers, {@link #addDescriptorsInBatch} does it.
+   * This way several files can be inspected concurrently while their problems are still added in a fixed order.
+   */
+  public void inspectInBatch(@NotNull InspectionManagerEx iManager, @NotNull List<InspectionProfileEntry> toolWrappers) {
+    Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper = getToolToWrapperMap(toolWrappers);
+    ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
+    inspect(new ArrayList<LocalInspectionToolWrapper>(tool2Wrapper.values()), iManager, false, false, false, progress);
+  }
+
+  private static Map<LocalInspectionTool, LocalInspectionToolWrapper> getToolToWrapperMap(@NotNull List<InspectionProfileEntry> toolWrappers) {
     Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper = new THashMap<LocalInspectionTool, LocalInspectionToolWrapper>(toolWrappers.size());
     for (InspectionProfileEntry toolWrapper : toolWrappers) {
       tool2Wrapper.put(((LocalInspectionToolWrapper)toolWrapper).getTool(), (LocalInspectionToolWrapper)toolWrapper);
     }
+    return tool2Wrapper;
+  }
 
-    ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
-    inspect(new ArrayList<LocalInspectionToolWrapper>(tool2Wrapper.values()), iManager, false, false, false, progress);
+  public void addDescriptorsInBatch(@NotNull InspectionManagerEx iManager, @NotNull List<InspectionProfileEntry> toolWrappers) {
+    Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper = getToolToWrapperMap(toolWrappers);
     addDescriptorsFromInjectedResults(tool2Wrapper, iManager);
     List<InspectionResult> resultList = result.get(myFile);
     if (resultList == null) return;
@@ -216,6 +238,9 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                    HighlightLevelUtil.AnalysisLevel.HIGHLIGHT_AND_INSPECT,true);
 
     MultiMap<LocalInspectionTool, String> tools = getToolsForElements(toolWrappers, checkDumbAwareness, inside, outside);
+    if (isOnTheFly && getId() == Pass.LOCAL_INSPECTIONS && myDocument != null) {
+      initElementProblems(toolWrappers);
+    }
 
     setProgressLimit(1L * tools.size() * 2);
     final LocalInspectionToolSession session = new LocalInspectionToolSession(myFile, myStartOffset, myEndOffset);
@@ -225,11 +250,41 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     visitRestElementsAndCleanup(iManager, isOnTheFly, indicator, outside, session, init, toolWrappers, checkDumbAwareness);
 
     indicator.checkCanceled();
+    if (!myElementProblems.isEmpty()) {
+      saveElementProblems(inside, outside);
+    }
 
     myInfos = new ArrayList<HighlightInfo>();
     addHighlightsFromResults(myInfos, indicator);
   }
 
+  private void initElementProblems(@NotNull List<LocalInspectionToolWrapper> toolWrappers) {
+    TextRange changedRange = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(myProject)).getFileStatusMap().getChangedRange(myDocument);
+    boolean wholeFileChanged = changedRange != null && changedRange.getStartOffset() == 0 && changedRange.getEndOffset() >= myFile.getTextLength();
+    Map<LocalInspectionTool, Map<PsiElement, List<ProblemDescriptor>>> oldProblems = wholeFileChanged ? null : myFile.getUserData(ELEMENT_PROBLEMS_KEY);
+    for (LocalInspectionToolWrapper wrapper : toolWrappers) {
+      if (wrapper.isElementLocal()) {
+        LocalInspectionTool tool = wrapper.getTool();
+        myElementProblems.put(tool, new ElementProblems(myFile, oldProblems == null ? null : oldProblems.get(tool), changedRange));
+      }
+    }
+  }
+
+  private void saveElementProblems(@NotNull List<PsiElement> inside, @NotNull List<PsiElement> outside) {
+    boolean wholeFile = myStartOffset == 0 && myEndOffset >= myFile.getTextLength();
+    Set<PsiElement> visited = new THashSet<PsiElement>(inside.size() + outside.size());
+    visited.addAll(inside);
+    visited.addAll(outside);
+    Map<LocalInspectionTool, Map<PsiElement, List<ProblemDescriptor>>> problems = new THashMap<LocalInspectionTool, Map<PsiElement, List<ProblemDescriptor>>>();
+    for (Map.Entry<LocalInspectionTool, ElementProblems> entry : myElementProblems.entrySet()) {
+      Map<PsiElement, List<ProblemDescriptor>> toolProblems = entry.getValue().getProblems(visited, wholeFile);
+      if (toolProblems != null) {
+        problems.put(entry.getKey(), toolProblems);
+      }
+    }
+    myFile.putUserData(ELEMENT_PROBLEMS_KEY, problems.isEmpty() ? null : problems);
+  }
+
   private static MultiMap<LocalInspectionTool, String> getToolsForElements(List<LocalInspectionToolWrapper> toolWrappers,
                                                                boolean checkDumbAwareness,
                                                                List<PsiElement> inside, List<PsiElement> outside) {
@@ -305,6 +360,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                             List<LocalInspectionToolWrapper> wrappers, boolean checkDumbAwareness) {
 
     final ArrayList<InspectionContext> init = new ArrayList<InspectionContext>();
+    final DaemonProfiler.PassRecord record = DaemonProfiler.getCurrentRecord();
     List<Map.Entry<LocalInspectionTool, Collection<String>>> entries = new ArrayList<Map.Entry<LocalInspectionTool, Collection<String>>>(tools.entrySet());
     boolean result = JobUtil.invokeConcurrentlyUnderProgress(entries, indicator, myFailFastOnAcquireReadAction, new Processor<Map.Entry<LocalInspectionTool, Collection<String>>>() {
       @Override
@@ -314,17 +370,25 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
         ApplicationManager.getApplication().assertReadAccessAllowed();
         final LocalInspectionTool tool = pair.getKey();
         final boolean[] applyIncrementally = {isOnTheFly};
+        final ElementProblems elementProblems = myElementProblems.get(tool);
         ProblemsHolder holder = new ProblemsHolder(iManager, myFile, isOnTheFly) {
           @Override
           public void registerProblem(@NotNull ProblemDescriptor descriptor) {
             super.registerProblem(descriptor);
+            if (elementProblems != null) {
+              elementProblems.problemRegistered(descriptor);
+            }
             if (applyIncrementally[0]) {
               addDescriptorIncrementally(descriptor, tool, indicator);
             }
           }
         };
         Set<String> languages = (Set<String>)pair.getValue();
-        PsiElementVisitor visitor = createVisitorAndAcceptElements(tool, holder, isOnTheFly, session, elements, languages);
+        long start = record == null ? 0 : System.nanoTime();
+        PsiElementVisitor visitor = createVisitorAndAcceptElements(tool, holder, isOnTheFly, session, elements, languages, elementProblems);
+        if (record != null) {
+          record.addSubTaskTime(tool.getShortName(), System.nanoTime() - start);
+        }
 
         synchronized (init) {
           init.add(new InspectionContext(tool, holder, visitor, languages));
@@ -348,7 +412,8 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                                                   boolean isOnTheFly,
                                                                   @NotNull LocalInspectionToolSession session,
                                                                   @NotNull List<PsiElement> elements,
-                                                                  @Nullable Set<String> languages) {
+                                                                  @Nullable Set<String> languages,
+                                                                  @Nullable ElementProblems elementProblems) {
     PsiElementVisitor visitor = tool.buildVisitor(holder, isOnTheFly, session);
     //noinspection ConstantConditions
     if(visitor == null) {
@@ -358,7 +423,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       : "The visitor returned from LocalInspectionTool.buildVisitor() must not be recursive. "+tool;
 
     tool.inspectionStarted(session, isOnTheFly);
-    acceptElements(elements, visitor, languages);
+    acceptElements(elements, visitor, languages, holder, elementProblems);
     return visitor;
   }
 
@@ -369,6 +434,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                            @NotNull final LocalInspectionToolSession session,
                                            @NotNull List<InspectionContext> init,
                                            List<LocalInspectionToolWrapper> wrappers, boolean checkDumbAwareness) {
+    final DaemonProfiler.PassRecord record = DaemonProfiler.getCurrentRecord();
     Processor<InspectionContext> processor =
       new Processor<InspectionContext>() {
         @Override
@@ -376,9 +442,13 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
           
           indicator.checkCanceled();
           ApplicationManager.getApplication().assertReadAccessAllowed();
-          acceptElements(elements, context.visitor, context.languageIds);
+          long start = record == null ? 0 : System.nanoTime();
+          acceptElements(elements, context.visitor, context.languageIds, context.holder, myElementProblems.get(context.tool));
           advanceProgress(1);
           context.tool.inspectionFinished(session, context.holder);
+          if (record != null) {
+            record.addSubTaskTime(context.tool.getShortName(), System.nanoTime() - start);
+          }
 
           if (context.holder.hasResults()) {
             appendDescriptors(myFile, context.holder.getResults(), context.tool);
@@ -395,12 +465,19 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
 
   private static void acceptElements(@NotNull List<PsiElement> elements,
                                      @NotNull PsiElementVisitor elementVisitor,
-                                     @Nullable Set<String> languages) {
+                                     @Nullable Set<String> languages,
+                                     @NotNull ProblemsHolder holder,
+                                     @Nullable ElementProblems elementProblems) {
     //noinspection ForLoopReplaceableByForEach
     for (int i = 0, elementsSize = elements.size(); i < elementsSize; i++) {
       PsiElement element = elements.get(i);
       if (languages == null || languages.contains(element.getLanguage().getID())) {
-        element.accept(elementVisitor);
+        if (elementProblems == null) {
+          element.accept(elementVisitor);
+        }
+        else {
+          elementProblems.accept(element, elementVisitor, holder);
+        }
       }
       ProgressManager.checkCanceled();
     }
@@ -755,7 +832,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       };
 
       LocalInspectionToolSession injSession = new LocalInspectionToolSession(injectedPsi, 0, injectedPsi.getTextLength());
-      createVisitorAndAcceptElements(tool, holder, isOnTheFly, injSession, elements, (Set<String>)pair.getValue());
+      createVisitorAndAcceptElements(tool, holder, isOnTheFly, injSession, elements, (Set<String>)pair.getValue(), null);
       tool.inspectionFinished(injSession, holder);
       List<ProblemDescriptor> problems = holder.getResults();
       if (!problems.isEmpty()) {
@@ -780,6 +857,87 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     }
   }
   
+  /**
+   * Remembers which problems an element-local tool has reported for each element it has visited,
+   * and reports them again instead of visiting the element when it lies outside of the range changed since the previous run.
+   */
+  private static class ElementProblems {
+    private final PsiFile myFile;
+    @Nullable private final Map<PsiElement, List<ProblemDescriptor>> myOldProblems; // null when nothing can be reused
+    @Nullable private final TextRange myChangedRange; // null when nothing has changed
+    private final Map<PsiElement, List<ProblemDescriptor>> myNewProblems = new THashMap<PsiElement, List<ProblemDescriptor>>();
+    private final List<ProblemDescriptor> myCurrentProblems = new ArrayList<ProblemDescriptor>();
+    private boolean myInsideElement;
+    private boolean myCacheable = true;
+
+    private ElementProblems(@NotNull PsiFile file,
+                            @Nullable Map<PsiElement, List<ProblemDescriptor>> oldProblems,
+                            @Nullable TextRange changedRange) {
+      myFile = file;
+      myOldProblems = oldProblems;
+      myChangedRange = changedRange;
+    }
+
+    private void accept(@NotNull PsiElement element, @NotNull PsiElementVisitor visitor, @NotNull ProblemsHolder holder) {
+      myCurrentProblems.clear();
+      myInsideElement = true;
+      try {
+        List<ProblemDescriptor> oldProblems = getReusableProblems(element);
+        if (oldProblems == null) {
+          element.accept(visitor);
+        }
+        else {
+          for (ProblemDescriptor descriptor : oldProblems) {
+            holder.registerProblem(descriptor);
+          }
+        }
+      }
+      finally {
+        myInsideElement = false;
+      }
+      if (!myCurrentProblems.isEmpty()) {
+        myNewProblems.put(element, new ArrayList<ProblemDescriptor>(myCurrentProblems));
+      }
+    }
+
+    // null if the element has to be visited
+    @Nullable
+    private List<ProblemDescriptor> getReusableProblems(@NotNull PsiElement element) {
+      if (myOldProblems == null || myChangedRange != null && element.getTextRange().intersects(myChangedRange)) return null;
+      List<ProblemDescriptor> problems = myOldProblems.get(element);
+      if (problems == null) return Collections.emptyList();
+      for (ProblemDescriptor problem : problems) {
+        if (problem.getPsiElement() == null) return null;
+      }
+      return problems;
+    }
+
+    private void problemRegistered(@NotNull ProblemDescriptor descriptor) {
+      PsiElement element = descriptor.getPsiElement();
+      if (!myInsideElement || element != null && element.getContainingFile().getViewProvider() != myFile.getViewProvider()) {
+        // reported from inspectionFinished() or redirected to some other place, can't be attributed to the visited element
+        myCacheable = false;
+      }
+      else {
+        myCurrentProblems.add(descriptor);
+      }
+    }
+
+    @Nullable
+    private Map<PsiElement, List<ProblemDescriptor>> getProblems(@NotNull Set<PsiElement> visited, boolean wholeFile) {
+      if (!myCacheable || myOldProblems == null && !wholeFile) return null;
+      if (myOldProblems != null) {
+        for (Map.Entry<PsiElement, List<ProblemDescriptor>> entry : myOldProblems.entrySet()) {
+          PsiElement element = entry.getKey();
+          if (!visited.contains(element) && element.isValid()) {
+            myNewProblems.put(element, entry.getValue());
+          }
+        }
+      }
+      return myNewProblems;
+    }
+  }
+
   private static class InspectionContext {
     private InspectionContext(LocalInspectionTool tool, ProblemsHolder holder, PsiElementVisitor visitor, Set<String> languageIds) {
       this.tool = tool;
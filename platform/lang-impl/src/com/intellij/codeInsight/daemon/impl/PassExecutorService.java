@@ -48,6 +48,7 @@ import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.CancellationException;
@@ -66,11 +67,17 @@ public abstract class PassExecutorService implements Disposable {
   private final Project myProject;
   private volatile boolean isDisposed;
   private final AtomicInteger nextPassId = new AtomicInteger(100);
+  private final DaemonProfiler myProfiler = new DaemonProfiler();
 
   public PassExecutorService(Project project) {
     myProject = project;
   }
 
+  @NotNull
+  public DaemonProfiler getProfiler() {
+    return myProfiler;
+  }
+
   public void dispose() {
     cancelAll(true);
     isDisposed = true;
@@ -267,6 +274,7 @@ public abstract class PassExecutorService implements Disposable {
 
   private void submit(final ScheduledPass pass) {
     if (!pass.myUpdateProgress.isCanceled()) {
+      if (pass.myRecord != null) pass.myRecord.submitted();
       Job<Void> job = JobUtil.submitToJobThread(pass.myJobPriority, pass, new Consumer<Future>() {
         @Override
         public void consume(Future future) {
@@ -297,6 +305,7 @@ public abstract class PassExecutorService implements Disposable {
     private final Collection<ScheduledPass> mySuccessorsOnCompletion = new ArrayList<ScheduledPass>();
     private final Collection<ScheduledPass> mySuccessorsOnSubmit = new ArrayList<ScheduledPass>();
     private final DaemonProgressIndicator myUpdateProgress;
+    private final DaemonProfiler.PassRecord myRecord;
 
     private ScheduledPass(@NotNull List<FileEditor> fileEditors,
                           @NotNull TextEditorHighlightingPass pass,
@@ -309,6 +318,7 @@ public abstract class PassExecutorService implements Disposable {
       myJobPriority = jobPriority;
       myRunningPredecessorsCount = new AtomicInteger(0);
       myUpdateProgress = progressIndicator;
+      myRecord = myProfiler.createRecord(pass);
     }
 
     public void run() {
@@ -329,6 +339,7 @@ public abstract class PassExecutorService implements Disposable {
       if (myUpdateProgress.isCanceled()) return;
 
       log(myUpdateProgress, myPass, "Started. ");
+      if (myRecord != null) myRecord.started();
 
       for (ScheduledPass successor : mySuccessorsOnSubmit) {
         int predecessorsToRun = successor.myRunningPredecessorsCount.decrementAndGet();
@@ -341,6 +352,8 @@ public abstract class PassExecutorService implements Disposable {
         public void run() {
           boolean success = ApplicationManagerEx.getApplicationEx().tryRunReadAction(new Runnable() {
             public void run() {
+              if (myRecord != null) myRecord.readActionStarted();
+              DaemonProfiler.setCurrentRecord(myRecord);
               try {
                 if (DumbService.getInstance(myProject).isDumb() && !DumbService.isDumbAware(myPass)) {
                   return;
@@ -365,6 +378,9 @@ public abstract class PassExecutorService implements Disposable {
                 LOG.error(e);
                 throw e;
               }
+              finally {
+                DaemonProfiler.setCurrentRecord(null);
+              }
             }
           });
 
@@ -375,9 +391,13 @@ public abstract class PassExecutorService implements Disposable {
       },myUpdateProgress);
 
       log(myUpdateProgress, myPass, "Finished. ");
+      if (myRecord != null) {
+        myRecord.collected();
+        if (myUpdateProgress.isCanceled()) myRecord.canceled();
+      }
 
       if (!myUpdateProgress.isCanceled()) {
-        applyInformationToEditors(myFileEditors, myPass, myUpdateProgress, myThreadsToStartCountdown);
+        applyInformationToEditors(myFileEditors, myPass, myRecord, myUpdateProgress, myThreadsToStartCountdown);
         for (ScheduledPass successor : mySuccessorsOnCompletion) {
           int predecessorsToRun = successor.myRunningPredecessorsCount.decrementAndGet();
           if (predecessorsToRun == 0) {
@@ -395,18 +415,20 @@ public abstract class PassExecutorService implements Disposable {
 
   private void applyInformationToEditors(@NotNull final List<FileEditor> fileEditors,
                                          @NotNull final TextEditorHighlightingPass pass,
+                                         @Nullable final DaemonProfiler.PassRecord record,
                                          @NotNull final DaemonProgressIndicator updateProgress,
                                          @NotNull final AtomicInteger threadsToStartCountdown) {
     final boolean testMode = ApplicationManager.getApplication().isUnitTestMode();
     ApplicationManager.getApplication().invokeLater(new DumbAwareRunnable() {
       public void run() {
-        doApplyInformationToEditors(updateProgress, pass, fileEditors, threadsToStartCountdown, testMode);
+        doApplyInformationToEditors(updateProgress, pass, record, fileEditors, threadsToStartCountdown, testMode);
       }
     }, ModalityState.stateForComponent(fileEditors.get(0).getComponent()));
   }
 
   private void doApplyInformationToEditors(@NotNull DaemonProgressIndicator updateProgress,
                                            @NotNull TextEditorHighlightingPass pass,
+                                           @Nullable DaemonProfiler.PassRecord record,
                                            @NotNull List<FileEditor> fileEditors,
                                            @NotNull AtomicInteger threadsToStartCountdown,
                                            boolean testMode) {
@@ -416,6 +438,7 @@ public abstract class PassExecutorService implements Disposable {
     }
     if (updateProgress.isCanceled()) {
       log(updateProgress, pass, " is canceled during apply, sorry");
+      if (record != null) record.canceled();
       return;
     }
     boolean applied = false;
@@ -427,6 +450,7 @@ public abstract class PassExecutorService implements Disposable {
             applied = true;
             log(updateProgress, pass, " Applied");
             pass.applyInformationToEditor();
+            if (record != null) record.applied(pass);
           }
           afterApplyInformationToEditor(pass, fileEditor, updateProgress);
 
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.codeInsight.daemon.impl.analysis.HighlightingSettingsPerFile;
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.codeInspection.InspectionProfileEntry;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Stores errors, warnings and inspection results found by the daemon in a file when the file is closed, and shows them again
+ * right after the file is reopened (possibly after restart), until the highlighting passes replace them with the fresh ones.
+ * The stored results are used only if neither the file text nor the inspection profile and highlighting level have changed since
+ * they were stored. Only the {@link #MAX_ENTRIES} most recently stored files are kept.
+ */
+class PersistentHighlightingCache {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.PersistentHighlightingCache");
+  private static final int VERSION = 2;
+  static final int MAX_ENTRIES = 1000;
+  // only the passes which are run for every opened file, so that the restored highlighters will surely be replaced
+  private static final int[] CACHED_GROUPS = {Pass.UPDATE_ALL, Pass.POST_UPDATE_ALL, Pass.LOCAL_INSPECTIONS};
+
+  private final Project myProject;
+  private PersistentHashMap<Integer, FileHighlights> myStorage;
+
+  PersistentHighlightingCache(@NotNull Project project) {
+    this(project, new File(PathManager.getSystemPath() + File.separator + "daemon" + File.separator +
+                           project.getName() + "." + project.getLocationHash() + File.separator + "highlights"));
+  }
+
+  PersistentHighlightingCache(@NotNull Project project, @NotNull File file) {
+    myProject = project;
+    try {
+      myStorage = new PersistentHashMap<Integer, FileHighlights>(file, EnumeratorIntegerDescriptor.INSTANCE, new FileHighlightsExternalizer());
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      PersistentHashMap.deleteFilesStartingWith(file);
+      try {
+        myStorage = new PersistentHashMap<Integer, FileHighlights>(file, EnumeratorIntegerDescriptor.INSTANCE, new FileHighlightsExternalizer());
+      }
+      catch (IOException e1) {
+        LOG.info(e1);
+      }
+    }
+  }
+
+  synchronized void close() {
+    if (myStorage == null) return;
+    try {
+      removeOldestEntries();
+      myStorage.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    myStorage = null;
+  }
+
+  /**
+   * Stores the highlighting which is currently shown for the document. Should be called only when all passes have finished for it.
+   */
+  synchronized void save(@NotNull Document document) {
+    ApplicationManager.getApplication().assertReadAccessAllowed();
+    int fileId = getFileId(document);
+    PsiFile psiFile = PsiDocumentManager.getInstance(myProject).getPsiFile(document);
+    if (myStorage == null || fileId < 0 || psiFile == null) return;
+
+    List<CachedInfo> infos = new ArrayList<CachedInfo>();
+    for (HighlightInfo info : DaemonCodeAnalyzerImpl.getHighlights(document, null, myProject)) {
+      if (info.getSeverity().myVal > HighlightSeverity.INFORMATION.myVal && !info.isFileLevelAnnotation && isCachedGroup(info.group)) {
+        infos.add(new CachedInfo(info));
+      }
+    }
+    try {
+      if (infos.isEmpty()) {
+        myStorage.remove(fileId);
+      }
+      else {
+        myStorage.put(fileId, new FileHighlights(System.currentTimeMillis(), getContentHash(document), getProfileHash(psiFile), infos));
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  /**
+   * Reads the highlighting stored for the document, provided it is still up-to-date. Reads the disk, so shouldn't be called in EDT.
+   */
+  @Nullable
+  FileHighlights load(@NotNull Document document) {
+    ApplicationManager.getApplication().assertReadAccessAllowed();
+    int fileId = getFileId(document);
+    PsiFile psiFile = PsiDocumentManager.getInstance(myProject).getPsiFile(document);
+    if (fileId < 0 || psiFile == null) return null;
+
+    FileHighlights highlights;
+    synchronized (this) {
+      if (myStorage == null) return null;
+      try {
+        highlights = myStorage.get(fileId);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        return null;
+      }
+    }
+    if (highlights == null || highlights.contentHash != getContentHash(document) || highlights.profileHash != getProfileHash(psiFile)) {
+      return null;
+    }
+    return highlights;
+  }
+
+  /**
+   * Shows the highlighting returned by {@link #load(Document)} unless the document has been changed since then.
+   */
+  void apply(@NotNull final Document document, @NotNull FileHighlights highlights) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    if (highlights.contentHash != getContentHash(document)) return;
+
+    SeverityRegistrar severityRegistrar = SeverityRegistrar.getInstance(myProject);
+    int textLength = document.getTextLength();
+    TIntObjectHashMap<List<HighlightInfo>> groups = new TIntObjectHashMap<List<HighlightInfo>>();
+    for (CachedInfo cached : highlights.infos) {
+      HighlightSeverity severity = severityRegistrar.getSeverity(cached.severity);
+      if (severity == null || cached.endOffset > textLength) continue;
+      TextAttributesKey attributesKey = TextAttributesKey.find(cached.attributesKey);
+      HighlightInfoType type = new HighlightInfoType.HighlightInfoTypeImpl(severity, attributesKey);
+      HighlightInfo info = new HighlightInfo(null, type, cached.startOffset, cached.endOffset, cached.description, cached.toolTip, severity,
+                                             cached.afterEndOfLine, null, false);
+      List<HighlightInfo> group = groups.get(cached.group);
+      if (group == null) {
+        group = new ArrayList<HighlightInfo>();
+        groups.put(cached.group, group);
+      }
+      group.add(info);
+    }
+    final int endOffset = textLength;
+    groups.forEachEntry(new TIntObjectProcedure<List<HighlightInfo>>() {
+      @Override
+      public boolean execute(int group, List<HighlightInfo> infos) {
+        UpdateHighlightersUtil.setHighlightersToEditor(myProject, document, 0, endOffset, infos, null, group);
+        return true;
+      }
+    });
+  }
+
+  // keeps only the most recently stored files so that the storage doesn't grow with every file ever opened
+  private void removeOldestEntries() throws IOException {
+    Collection<Integer> fileIds = myStorage.getAllKeysWithExistingMapping();
+    if (fileIds.size() <= MAX_ENTRIES) return;
+
+    final List<Pair<Integer, Long>> stamps = new ArrayList<Pair<Integer, Long>>(fileIds.size());
+    for (Integer fileId : fileIds) {
+      FileHighlights highlights = myStorage.get(fileId);
+      stamps.add(Pair.create(fileId, highlights == null ? 0L : highlights.savedTime));
+    }
+    Collections.sort(stamps, new Comparator<Pair<Integer, Long>>() {
+      @Override
+      public int compare(Pair<Integer, Long> o1, Pair<Integer, Long> o2) {
+        return o2.second.compareTo(o1.second);
+      }
+    });
+    for (Pair<Integer, Long> stamp : ContainerUtil.subList(stamps, MAX_ENTRIES)) {
+      myStorage.remove(stamp.first);
+    }
+    myStorage.compact();
+  }
+
+  static boolean isCachedGroup(int group) {
+    for (int cachedGroup : CACHED_GROUPS) {
+      if (cachedGroup == group) return true;
+    }
+    return false;
+  }
+
+  private static int getFileId(@NotNull Document document) {
+    VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+    return file instanceof VirtualFileWithId ? ((VirtualFileWithId)file).getId() : -1;
+  }
+
+  private static int getContentHash(@NotNull Document document) {
+    CharSequence text = document.getCharsSequence();
+    return 31 * StringUtil.stringHashCode(text) + text.length();
+  }
+
+  // the results depend on which inspections are enabled and with which severities, and on the highlighting level of the file
+  private int getProfileHash(@NotNull PsiFile file) {
+    InspectionProfile profile = InspectionProjectProfileManager.getInstance(myProject).getInspectionProfile();
+    int hash = profile.getName().hashCode();
+    hash = 31 * hash + (PowerSaveMode.isEnabled() ? 1 : 0);
+    HighlightingSettingsPerFile levels = HighlightingSettingsPerFile.getInstance(myProject);
+    if (levels != null) {
+      for (PsiFile root : file.getViewProvider().getAllFiles()) {
+        hash = 31 * hash + levels.getHighlightingSettingForRoot(root).ordinal();
+      }
+    }
+    for (InspectionProfileEntry entry : profile.getInspectionTools(file)) {
+      HighlightDisplayKey key = HighlightDisplayKey.find(entry.getShortName());
+      if (key == null || !profile.isToolEnabled(key, file)) continue;
+      hash = 31 * hash + entry.getShortName().hashCode();
+      hash = 31 * hash + profile.getErrorLevel(key, file).getSeverity().myName.hashCode();
+    }
+    return hash;
+  }
+
+  static class FileHighlights {
+    private final long savedTime;
+    private final int contentHash;
+    private final int profileHash;
+    private final List<CachedInfo> infos;
+
+    private FileHighlights(long savedTime, int contentHash, int profileHash, @NotNull List<CachedInfo> infos) {
+      this.savedTime = savedTime;
+      this.contentHash = contentHash;
+      this.profileHash = profileHash;
+      this.infos = infos;
+    }
+  }
+
+  private static class CachedInfo {
+    private final int startOffset;
+    private final int endOffset;
+    private final int group;
+    private final String severity;
+    private final String attributesKey;
+    @Nullable private final String description;
+    @Nullable private final String toolTip;
+    private final boolean afterEndOfLine;
+
+    private CachedInfo(@NotNull HighlightInfo info) {
+      startOffset = info.getActualStartOffset();
+      endOffset = info.getActualEndOffset();
+      group = info.group;
+      severity = info.getSeverity().myName;
+      TextAttributesKey key = info.forcedTextAttributesKey != null ? info.forcedTextAttributesKey : info.type.getAttributesKey();
+      attributesKey = key.getExternalName();
+      description = info.description;
+      toolTip = info.toolTip;
+      afterEndOfLine = info.isAfterEndOfLine;
+    }
+
+    private CachedInfo(DataInput in) throws IOException {
+      startOffset = in.readInt();
+      endOffset = in.readInt();
+      group = in.readInt();
+      severity = IOUtil.readString(in);
+      attributesKey = IOUtil.readString(in);
+      description = IOUtil.readString(in);
+      toolTip = IOUtil.readString(in);
+      afterEndOfLine = in.readBoolean();
+    }
+
+    private void save(DataOutput out) throws IOException {
+      out.writeInt(startOffset);
+      out.writeInt(endOffset);
+      out.writeInt(group);
+      IOUtil.writeString(severity, out);
+      IOUtil.writeString(attributesKey, out);
+      IOUtil.writeString(description, out);
+      IOUtil.writeString(toolTip, out);
+      out.writeBoolean(afterEndOfLine);
+    }
+  }
+
+  private static class FileHighlightsExternalizer implements DataExternalizer<FileHighlights> {
+    @Override
+    public void save(DataOutput out, FileHighlights value) throws IOException {
+      out.writeInt(VERSION);
+      out.writeLong(value.savedTime);
+      out.writeInt(value.contentHash);
+      out.writeInt(value.profileHash);
+      out.writeInt(value.infos.size());
+      for (CachedInfo info : value.infos) {
+        info.save(out);
+      }
+    }
+
+    @Override
+    public FileHighlights read(DataInput in) throws IOException {
+      if (in.readInt() != VERSION) return null;
+      long savedTime = in.readLong();
+      int contentHash = in.readInt();
+      int profileHash = in.readInt();
+      int size = in.readInt();
+      List<CachedInfo> infos = new ArrayList<CachedInfo>(size);
+      for (int i = 0; i < size; i++) {
+        infos.add(new CachedInfo(in));
+      }
+      return new FileHighlights(savedTime, contentHash, profileHash, infos);
+    }
+  }
+}
@@ -209,6 +209,7 @@ public class PsiChangeHandler extends PsiTreeChangeAdapter implements Disposable
     }
 
     int fileLength = file.getTextLength();
+    myFileStatusMap.markFileChanged(document, child.getTextRange(), fileLength);
     if (!file.getViewProvider().isPhysical()) {
       myFileStatusMap.markFileScopeDirty(document, new TextRange(0, fileLength), fileLength);
       return;
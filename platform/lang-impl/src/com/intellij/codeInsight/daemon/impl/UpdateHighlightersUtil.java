@@ -268,37 +268,42 @@ public class UpdateHighlightersUtil {
 
     final Map<TextRange, RangeMarker> ranges2markersCache = new THashMap<TextRange, RangeMarker>(10);
     final boolean[] changed = {false};
-    RangeMarkerTree.sweep(new RangeMarkerTree.Generator<HighlightInfo>(){
+    ((MarkupModelEx)markup).runInBatchMode(new Runnable() {
       @Override
-      public boolean generate(Processor<HighlightInfo> processor) {
-        return ContainerUtil.process(infos, processor);
-      }
-    }, new SweepProcessor<HighlightInfo>() {
-      @Override
-      public boolean process(int offset, HighlightInfo info, boolean atStart, Collection<HighlightInfo> overlappingIntervals) {
-        if (!atStart) return true;
-        if (!info.fromInjection && info.getEndOffset() < document.getTextLength() && (info.getEndOffset() <= startOffset || info.getStartOffset()>=endOffset)) return true; // injections are oblivious to restricting range
-
-        if (info.isFileLevelAnnotation && psiFile != null && psiFile.getViewProvider().isPhysical()) {
-          addFileLevelHighlight(project, group, info, psiFile);
-          changed[0] = true;
-          return true;
-        }
-        if (isWarningCoveredByError(info, overlappingIntervals, severityRegistrar)) {
-          return true;
-        }
-        if (info.getStartOffset() < range.getStartOffset() || info.getEndOffset() > range.getEndOffset()) {
-          createOrReuseHighlighterFor(info, colorsScheme, document, group, psiFile, (MarkupModelEx)markup, infosToRemove,
-                                        ranges2markersCache, severityRegistrar);
+      public void run() {
+        RangeMarkerTree.sweep(new RangeMarkerTree.Generator<HighlightInfo>(){
+          @Override
+          public boolean generate(Processor<HighlightInfo> processor) {
+            return ContainerUtil.process(infos, processor);
+          }
+        }, new SweepProcessor<HighlightInfo>() {
+          @Override
+          public boolean process(int offset, HighlightInfo info, boolean atStart, Collection<HighlightInfo> overlappingIntervals) {
+            if (!atStart) return true;
+            if (!info.fromInjection && info.getEndOffset() < document.getTextLength() && (info.getEndOffset() <= startOffset || info.getStartOffset()>=endOffset)) return true; // injections are oblivious to restricting range
+
+            if (info.isFileLevelAnnotation && psiFile != null && psiFile.getViewProvider().isPhysical()) {
+              addFileLevelHighlight(project, group, info, psiFile);
+              changed[0] = true;
+              return true;
+            }
+            if (isWarningCoveredByError(info, overlappingIntervals, severityRegistrar)) {
+              return true;
+            }
+            if (info.getStartOffset() < range.getStartOffset() || info.getEndOffset() > range.getEndOffset()) {
+              createOrReuseHighlighterFor(info, colorsScheme, document, group, psiFile, (MarkupModelEx)markup, infosToRemove,
+                                            ranges2markersCache, severityRegistrar);
+              changed[0] = true;
+            }
+            return true;
+          }
+        });
+        for (RangeHighlighter highlighter : infosToRemove.forAllInGarbageBin()) {
+          highlighter.dispose();
           changed[0] = true;
         }
-        return true;
       }
     });
-    for (RangeHighlighter highlighter : infosToRemove.forAllInGarbageBin()) {
-      highlighter.dispose();
-      changed[0] = true;
-    }
 
     if (changed[0]) {
       clearWhiteSpaceOptimizationFlag(document);
@@ -339,36 +344,41 @@ public class UpdateHighlightersUtil {
     final Map<TextRange, RangeMarker> ranges2markersCache = new THashMap<TextRange, RangeMarker>(10);
     final PsiFile psiFile = PsiDocumentManager.getInstance(project).getPsiFile(document);
     final boolean[] changed = {false};
-    RangeMarkerTree.sweep(new RangeMarkerTree.Generator<HighlightInfo>(){
+    markup.runInBatchMode(new Runnable() {
       @Override
-      public boolean generate(final Processor<HighlightInfo> processor) {
-        return ContainerUtil.process(highlights, processor);
-      }
-    }, new SweepProcessor<HighlightInfo>() {
-      @Override
-      public boolean process(int offset, HighlightInfo info, boolean atStart, Collection<HighlightInfo> overlappingIntervals) {
-        if (!atStart) {
-          return true;
-        }
-        if (info.isFileLevelAnnotation && psiFile != null && psiFile.getViewProvider().isPhysical()) {
-          addFileLevelHighlight(project, group, info, psiFile);
-          changed[0] = true;
-          return true;
-        }
-        if (isWarningCoveredByError(info, overlappingIntervals, severityRegistrar)) {
-          return true;
-        }
-        if (info.getStartOffset() >= range.getStartOffset() && info.getEndOffset() <= range.getEndOffset() && psiFile != null) {
-          createOrReuseHighlighterFor(info, colorsScheme, document, group, psiFile, markup, infosToRemove, ranges2markersCache, severityRegistrar);
+      public void run() {
+        RangeMarkerTree.sweep(new RangeMarkerTree.Generator<HighlightInfo>(){
+          @Override
+          public boolean generate(final Processor<HighlightInfo> processor) {
+            return ContainerUtil.process(highlights, processor);
+          }
+        }, new SweepProcessor<HighlightInfo>() {
+          @Override
+          public boolean process(int offset, HighlightInfo info, boolean atStart, Collection<HighlightInfo> overlappingIntervals) {
+            if (!atStart) {
+              return true;
+            }
+            if (info.isFileLevelAnnotation && psiFile != null && psiFile.getViewProvider().isPhysical()) {
+              addFileLevelHighlight(project, group, info, psiFile);
+              changed[0] = true;
+              return true;
+            }
+            if (isWarningCoveredByError(info, overlappingIntervals, severityRegistrar)) {
+              return true;
+            }
+            if (info.getStartOffset() >= range.getStartOffset() && info.getEndOffset() <= range.getEndOffset() && psiFile != null) {
+              createOrReuseHighlighterFor(info, colorsScheme, document, group, psiFile, markup, infosToRemove, ranges2markersCache, severityRegistrar);
+              changed[0] = true;
+            }
+            return true;
+          }
+        });
+        for (RangeHighlighter highlighter : infosToRemove.forAllInGarbageBin()) {
+          highlighter.dispose();
           changed[0] = true;
         }
-        return true;
       }
     });
-    for (RangeHighlighter highlighter : infosToRemove.forAllInGarbageBin()) {
-      highlighter.dispose();
-      changed[0] = true;
-    }
 
     if (changed[0]) {
       clearWhiteSpaceOptimizationFlag(document);
@@ -420,7 +430,7 @@ public class UpdateHighlightersUtil {
       infoEndOffset = docLength;
     }
 
-    info.text = document.getText().substring(infoStartOffset, infoEndOffset);
+    info.text = document.getCharsSequence().subSequence(infoStartOffset, infoEndOffset).toString();
     info.group = group;
 
     int layer = getLayer(info, severityRegistrar);
@@ -527,18 +537,18 @@ public class UpdateHighlightersUtil {
     }
   }
 
-  static void setLineMarkersToEditor(@NotNull Project project,
+  static void setLineMarkersToEditor(@NotNull final Project project,
                                      @NotNull Document document,
-                                     int startOffset,
-                                     int endOffset,
-                                     @NotNull Collection<LineMarkerInfo> markers,
+                                     final int startOffset,
+                                     final int endOffset,
+                                     @NotNull final Collection<LineMarkerInfo> markers,
                                      int group) {
     ApplicationManager.getApplication().assertIsDispatchThread();
 
     List<LineMarkerInfo> oldMarkers = DaemonCodeAnalyzerImpl.getLineMarkers(document, project);
-    List<LineMarkerInfo> array = new ArrayList<LineMarkerInfo>(oldMarkers == null ? markers.size() : oldMarkers.size());
-    MarkupModel markupModel = DocumentMarkupModel.forDocument(document, project, true);
-    HighlightersRecycler toReuse = new HighlightersRecycler();
+    final List<LineMarkerInfo> array = new ArrayList<LineMarkerInfo>(oldMarkers == null ? markers.size() : oldMarkers.size());
+    final MarkupModel markupModel = DocumentMarkupModel.forDocument(document, project, true);
+    final HighlightersRecycler toReuse = new HighlightersRecycler();
     if (oldMarkers != null) {
       for (LineMarkerInfo info : oldMarkers) {
         RangeHighlighter highlighter = info.highlighter;
@@ -556,40 +566,45 @@ public class UpdateHighlightersUtil {
       }
     }
 
-    for (LineMarkerInfo info : markers) {
-      PsiElement element = info.getElement();
-      if (element == null) {
-        continue;
-      }
+    ((MarkupModelEx)markupModel).runInBatchMode(new Runnable() {
+      @Override
+      public void run() {
+        for (LineMarkerInfo info : markers) {
+          PsiElement element = info.getElement();
+          if (element == null) {
+            continue;
+          }
 
-      TextRange textRange = element.getTextRange();
-      if (textRange == null) continue;
-      TextRange elementRange = InjectedLanguageManager.getInstance(project).injectedToHost(element, textRange);
-      if (startOffset > elementRange.getStartOffset() || elementRange.getEndOffset() > endOffset) {
-        continue;
-      }
-      RangeHighlighter marker = toReuse.pickupHighlighterFromGarbageBin(info.startOffset, info.endOffset, HighlighterLayer.ADDITIONAL_SYNTAX);
-      if (marker == null) {
-        marker = markupModel.addRangeHighlighter(info.startOffset, info.endOffset, HighlighterLayer.ADDITIONAL_SYNTAX, null, HighlighterTargetArea.EXACT_RANGE);
-      }
-      LineMarkerInfo.LineMarkerGutterIconRenderer renderer = (LineMarkerInfo.LineMarkerGutterIconRenderer)info.createGutterRenderer();
-      LineMarkerInfo.LineMarkerGutterIconRenderer oldRenderer = marker.getGutterIconRenderer() instanceof LineMarkerInfo.LineMarkerGutterIconRenderer ? (LineMarkerInfo.LineMarkerGutterIconRenderer)marker.getGutterIconRenderer() : null;
-      if (oldRenderer == null || renderer == null || !renderer.equals(oldRenderer)) {
-        marker.setGutterIconRenderer(renderer);
-      }
-      if (!Comparing.equal(marker.getLineSeparatorColor(), info.separatorColor)) {
-        marker.setLineSeparatorColor(info.separatorColor);
-      }
-      if (!Comparing.equal(marker.getLineSeparatorPlacement(), info.separatorPlacement)) {
-        marker.setLineSeparatorPlacement(info.separatorPlacement);
-      }
-      info.highlighter = marker;
-      array.add(info);
-    }
+          TextRange textRange = element.getTextRange();
+          if (textRange == null) continue;
+          TextRange elementRange = InjectedLanguageManager.getInstance(project).injectedToHost(element, textRange);
+          if (startOffset > elementRange.getStartOffset() || elementRange.getEndOffset() > endOffset) {
+            continue;
+          }
+          RangeHighlighter marker = toReuse.pickupHighlighterFromGarbageBin(info.startOffset, info.endOffset, HighlighterLayer.ADDITIONAL_SYNTAX);
+          if (marker == null) {
+            marker = markupModel.addRangeHighlighter(info.startOffset, info.endOffset, HighlighterLayer.ADDITIONAL_SYNTAX, null, HighlighterTargetArea.EXACT_RANGE);
+          }
+          LineMarkerInfo.LineMarkerGutterIconRenderer renderer = (LineMarkerInfo.LineMarkerGutterIconRenderer)info.createGutterRenderer();
+          LineMarkerInfo.LineMarkerGutterIconRenderer oldRenderer = marker.getGutterIconRenderer() instanceof LineMarkerInfo.LineMarkerGutterIconRenderer ? (LineMarkerInfo.LineMarkerGutterIconRenderer)marker.getGutterIconRenderer() : null;
+          if (oldRenderer == null || renderer == null || !renderer.equals(oldRenderer)) {
+            marker.setGutterIconRenderer(renderer);
+          }
+          if (!Comparing.equal(marker.getLineSeparatorColor(), info.separatorColor)) {
+            marker.setLineSeparatorColor(info.separatorColor);
+          }
+          if (!Comparing.equal(marker.getLineSeparatorPlacement(), info.separatorPlacement)) {
+            marker.setLineSeparatorPlacement(info.separatorPlacement);
+          }
+          info.highlighter = marker;
+          array.add(info);
+        }
 
-    for (RangeHighlighter highlighter : toReuse.forAllInGarbageBin()) {
-      highlighter.dispose();
-    }
+        for (RangeHighlighter highlighter : toReuse.forAllInGarbageBin()) {
+          highlighter.dispose();
+        }
+      }
+    });
 
     DaemonCodeAnalyzerImpl.setLineMarkers(document, array, project);
   }
@@ -51,6 +51,7 @@ import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.impl.DebugUtil;
+import com.intellij.ui.CollectionListModel;
 import com.intellij.ui.LightweightHint;
 import com.intellij.ui.ListScrollingUtil;
 import com.intellij.ui.ScreenUtil;
@@ -100,7 +101,8 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
 
   private boolean myStableStart;
   private RangeMarker myLookupStartMarker;
-  private final JList myList = new JBList(new DefaultListModel()) {
+  private final CollectionListModel<LookupElement> myListModel = new CollectionListModel<LookupElement>(Collections.<LookupElement>emptyList());
+  private final JList myList = new JBList(myListModel) {
     @Override
     protected void processKeyEvent(final KeyEvent e) {
       final char keyChar = e.getKeyChar();
@@ -206,9 +208,8 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
 
     updateLookupStart(0);
 
-    final ListModel model = myList.getModel();
-    addEmptyItem((DefaultListModel)model);
-    updateListHeight(model);
+    addEmptyItem(myListModel);
+    updateListHeight(myListModel);
 
     setArranger(arranger);
 
@@ -312,7 +313,7 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
     
     myPresentableModel.preselectedItem = EMPTY_LOOKUP_ITEM;
     synchronized (myList) {
-      ((DefaultListModel)myList.getModel()).clear();
+      myListModel.removeAll();
     }
 
     final List<LookupElement> items = myPresentableModel.getItems();
@@ -359,7 +360,7 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
     final ArrayList<LookupElement> result = new ArrayList<LookupElement>();
     final Object[] objects;
     synchronized (myList) {
-      objects = ((DefaultListModel)myList.getModel()).toArray();
+      objects = myListModel.getItems().toArray();
     }
     for (final Object object : objects) {
       if (!(object instanceof EmptyLookupItem)) {
@@ -476,28 +477,26 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
     } else  {
       for (List<LookupElement> group : snapshot.second) {
         for (LookupElement element : group) {
-          if (prefixMatches(element)) {
+          if (items.contains(element)) {
             model.add(element);
           }
         }
       }
     }
 
-    DefaultListModel listModel = (DefaultListModel)myList.getModel();
     synchronized (myList) {
-      listModel.clear();
+      // replace the whole content at once, adding the elements one by one would fire an event for each of them
+      myListModel.removeAll();
 
       if (!model.isEmpty()) {
-        for (LookupElement element : model) {
-          listModel.addElement(element);
-        }
+        myListModel.add(new ArrayList<LookupElement>(model));
       }
       else {
-        addEmptyItem(listModel);
+        addEmptyItem(myListModel);
       }
     }
 
-    updateListHeight(listModel);
+    updateListHeight(myListModel);
 
     if (!model.isEmpty()) {
       LookupElement first = model.iterator().next();
@@ -592,10 +591,10 @@ public class LookupImpl extends LightweightHint implements LookupEx, Disposable
     myList.setVisibleRowCount(Math.min(model.getSize(), UISettings.getInstance().MAX_LOOKUP_LIST_HEIGHT));
   }
 
-  private void addEmptyItem(DefaultListModel model) {
+  private void addEmptyItem(CollectionListModel<LookupElement> model) {
     LookupItem<String> item = new EmptyLookupItem(myCalculating ? " " : LangBundle.message("completion.no.suggestions"));
     myMatchers.put(item, new CamelHumpMatcher(""));
-    model.addElement(item);
+    model.add(item);
 
     updateLookupWidth(item);
     requestResize();
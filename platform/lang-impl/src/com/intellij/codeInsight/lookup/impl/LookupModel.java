@@ -115,10 +115,18 @@ public class LookupModel {
       }
 
       if (map.size() != myItems.size()) {
-        clearItems();
-        for (LookupElement newItem : map.keySet()) {
-          addItem(newItem);
+        // the relevance classifier and the weights it has cached stay valid for the remaining items,
+        // so they're just filtered out not to weigh everything again on each typed character
+        myItems.clear();
+        myItems.addAll(map.keySet());
+        SortedList<LookupElement> sortedItems = new SortedList<LookupElement>(mySortedItems.getComparator());
+        for (LookupElement item : mySortedItems) {
+          if (map.containsKey(item)) {
+            sortedItems.add(item);
+          }
         }
+        mySortedItems = sortedItems;
+        stamp++;
       }
 
       return map;
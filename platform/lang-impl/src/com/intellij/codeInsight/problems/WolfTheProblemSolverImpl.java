@@ -48,6 +48,7 @@ import com.intellij.psi.*;
 import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
+import gnu.trove.TObjectLongHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -60,6 +61,8 @@ import java.util.*;
 public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
   private final Map<VirtualFile, ProblemFileInfo> myProblems = new THashMap<VirtualFile, ProblemFileInfo>();
   private final Collection<VirtualFile> myCheckingQueue = new THashSet<VirtualFile>(10);
+  // out of code block modification count at the moment the queued file was checked last time, guarded by myCheckingQueue
+  private final TObjectLongHashMap<VirtualFile> myCheckedStamps = new TObjectLongHashMap<VirtualFile>();
 
   private final Project myProject;
   private final List<ProblemListener> myProblemListeners = ContainerUtil.createEmptyCOWList();
@@ -92,6 +95,7 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     }
     synchronized (myCheckingQueue) {
       myCheckingQueue.remove(problemFile);
+      myCheckedStamps.remove(problemFile);
     }
     if (old != null) {
       // firing outside lock
@@ -144,6 +148,7 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
 
       public void childrenChanged(PsiTreeChangeEvent event) {
         clearSyntaxErrorFlag(event);
+        forgetCheckStamp(event);
       }
     };
     psiManager.addPsiTreeChangeListener(changeListener);
@@ -204,6 +209,16 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     }
   }
 
+  private void forgetCheckStamp(final PsiTreeChangeEvent event) {
+    PsiFile file = event.getFile();
+    if (file == null) return;
+    VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) return;
+    synchronized (myCheckingQueue) {
+      myCheckedStamps.remove(virtualFile);
+    }
+  }
+
   public void projectOpened() {
   }
 
@@ -227,10 +242,18 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
   public void startCheckingIfVincentSolvedProblemsYet(@NotNull ProgressIndicator progress, @NotNull ProgressableTextEditorHighlightingPass pass) throws ProcessCanceledException{
     if (!myProject.isOpen()) return;
 
-    List<VirtualFile> files;
+    // problems in the queued files can only be fixed by changing the files themselves (see forgetCheckStamp())
+    // or the declarations they depend on, so the files checked since the last out of code block change are skipped
+    final long modificationCount = PsiManager.getInstance(myProject).getModificationTracker().getOutOfCodeBlockModificationCount();
+    List<VirtualFile> files = new ArrayList<VirtualFile>();
     synchronized (myCheckingQueue) {
-      files = new ArrayList<VirtualFile>(myCheckingQueue);
+      for (VirtualFile file : myCheckingQueue) {
+        if (!myCheckedStamps.containsKey(file) || myCheckedStamps.get(file) != modificationCount) {
+          files.add(file);
+        }
+      }
     }
+    if (files.isEmpty()) return;
     long progressLimit = 0;
     for (VirtualFile file : files) {
       if (file.isValid()) progressLimit += file.getLength(); // (rough approx number of PSI elements = file length/2) * (visitor count = 2 usually)
@@ -245,6 +268,9 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
         if (!virtualFile.isValid() || orderVincentToCleanTheCar(virtualFile, progress, statusBar)) {
           doRemove(virtualFile);
         }
+        else {
+          markChecked(virtualFile, modificationCount);
+        }
         if (virtualFile.isValid()) pass.advanceProgress(virtualFile.getLength());
       }
     }
@@ -253,6 +279,14 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     }
   }
 
+  private void markChecked(@NotNull VirtualFile file, long modificationCount) {
+    synchronized (myCheckingQueue) {
+      if (myCheckingQueue.contains(file)) {
+        myCheckedStamps.put(file, modificationCount);
+      }
+    }
+  }
+
   public static class HaveGotErrorException extends RuntimeException {
     private final HighlightInfo myHighlightInfo;
     private final boolean myHasErrorElement;
@@ -402,6 +436,7 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     if (!isToBeHighlighted(suspiciousFile)) return;
     synchronized (myCheckingQueue) {
       myCheckingQueue.add(suspiciousFile);
+      myCheckedStamps.remove(suspiciousFile);
     }
   }
 
@@ -446,6 +481,7 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     }
     synchronized (myCheckingQueue) {
       myCheckingQueue.add(virtualFile);
+      myCheckedStamps.remove(virtualFile);
     }
     if (fireListener) {
       fireProblemListeners.problemsAppeared(virtualFile);
@@ -500,6 +536,7 @@ public class WolfTheProblemSolverImpl extends WolfTheProblemSolver {
     }
     synchronized (myCheckingQueue) {
       myCheckingQueue.add(file);
+      myCheckedStamps.remove(file);
     }
     if (!hasProblemsBefore) {
       fireProblemListeners.problemsAppeared(file);
@@ -49,6 +49,7 @@ import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.CharsetToolkit;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.Profile;
 import com.intellij.profile.codeInspection.InspectionProfileManager;
@@ -61,6 +62,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -107,13 +110,9 @@ public class ViewOfflineResultsAction extends AnAction implements DumbAware {
               );
             }
             else if (XML_EXTENSION.equals(extension)) {
-              resMap.put(shortName, ApplicationManager.getApplication().runReadAction(
-                  new Computable<Map<String, Set<OfflineProblemDescriptor>>>() {
-                    public Map<String, Set<OfflineProblemDescriptor>> compute() {
-                      return OfflineViewParseUtil.parse(LoadTextUtil.loadText(inspectionFile).toString());
-                    }
-                  }
-              ));
+              // results of big projects may be huge, so they are parsed straight from the file
+              resMap.put(shortName, OfflineViewParseUtil.parse(
+                new BufferedReader(new InputStreamReader(inspectionFile.getInputStream(), CharsetToolkit.UTF8_CHARSET))));
             }
           }
         }
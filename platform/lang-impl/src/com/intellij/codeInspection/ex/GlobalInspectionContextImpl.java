@@ -25,6 +25,7 @@ import com.intellij.codeInspection.lang.GlobalInspectionContextExtension;
 import com.intellij.codeInspection.lang.InspectionExtensionsFactory;
 import com.intellij.codeInspection.reference.*;
 import com.intellij.codeInspection.ui.InspectionResultsView;
+import com.intellij.concurrency.JobSchedulerImpl;
 import com.intellij.concurrency.JobUtil;
 import com.intellij.lang.injection.InjectedLanguageManager;
 import com.intellij.openapi.actionSystem.ToggleAction;
@@ -45,6 +46,7 @@ import com.intellij.openapi.project.ProjectUtil;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindowId;
 import com.intellij.openapi.wm.ToolWindowManager;
@@ -61,7 +63,6 @@ import com.intellij.util.TripleFunction;
 import com.intellij.util.containers.HashMap;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
-import org.jdom.Document;
 import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -77,6 +78,7 @@ import java.util.Set;
 
 public class GlobalInspectionContextImpl extends UserDataHolderBase implements GlobalInspectionContext {
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.ex.GlobalInspectionContextImpl");
+  private static final int FILES_PER_CORE = 4;
 
   private RefManager myRefManager;
   private final NotNullLazyValue<ContentManager> myContentManager;
@@ -294,43 +296,43 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
         public void run() {
           performInspectionsWithProgress(scope, manager);
           @NonNls final String ext = ".xml";
+          final PathMacroManager pathMacroManager = PathMacroManager.getInstance(getProject());
           for (Map.Entry<String,Tools> stringSetEntry : myTools.entrySet()) {
-            final Element root = new Element(InspectionsBundle.message("inspection.problems"));
-            final Document doc = new Document(root);
             final Tools sameTools = stringSetEntry.getValue();
-            boolean hasProblems = false;
-            boolean isLocalTool = false;
             String toolName = stringSetEntry.getKey();
-            if (sameTools != null) {
-              for (ScopeToolState toolDescr : sameTools.getTools()) {
-                final InspectionTool tool = (InspectionTool)toolDescr.getTool();
-                if (tool instanceof LocalInspectionToolWrapper) {
-                  hasProblems = new File(outputPath, toolName + ext).exists();
-                  isLocalTool = true;
-                }
-                else {
-                  tool.updateContent();
-                  if (tool.hasReportedProblems()) {
-                    hasProblems = true;
-                    tool.exportResults(root);
+            final File file = new File(outputPath, toolName + ext);
+            // local tools have already written their problems while the files were inspected,
+            // results of the global ones are written problem by problem not to build the whole document in memory
+            final StreamingProblemsElement root = new StreamingProblemsElement(file, pathMacroManager);
+            boolean isLocalTool = false;
+            try {
+              try {
+                if (sameTools != null) {
+                  for (ScopeToolState toolDescr : sameTools.getTools()) {
+                    final InspectionTool tool = (InspectionTool)toolDescr.getTool();
+                    if (tool instanceof LocalInspectionToolWrapper) {
+                      isLocalTool = true;
+                    }
+                    else {
+                      tool.updateContent();
+                      if (tool.hasReportedProblems()) {
+                        tool.exportResults(root);
+                      }
+                    }
                   }
                 }
               }
-            }
-            if (!hasProblems) continue;
-            @NonNls final String isLocalToolAttribute = "is_local_tool";
-            root.setAttribute(isLocalToolAttribute, String.valueOf(isLocalTool));
-            try {
-              new File(outputPath).mkdirs();
-              final File file = new File(outputPath, toolName + ext);
-              inspectionsResults.add(file);
+              finally {
+                root.close();
+              }
               if (isLocalTool) {
+                if (!file.exists()) continue;
                 FileUtil.writeToFile(file, ("</" + InspectionsBundle.message("inspection.problems") + ">").getBytes("UTF-8"), true);
               }
-              else {
-                PathMacroManager.getInstance(getProject()).collapsePaths(doc.getRootElement());
-                JDOMUtil.writeDocument(doc, file, "\n");
+              else if (!root.hasProblems()) {
+                continue;
               }
+              inspectionsResults.add(file);
             }
             catch (IOException e) {
               LOG.error(e);
@@ -525,7 +527,6 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
     }
     if (RUN_GLOBAL_TOOLS_ONLY) return;
 
-    final PsiManager psiManager = PsiManager.getInstance(myProject);
     final Set<VirtualFile> localScopeFiles = scope.toSearchScope() instanceof LocalSearchScope ? new THashSet<VirtualFile>() : null;
     for (Tools tools : globalSimpleTools) {
       GlobalInspectionToolWrapper toolWrapper = (GlobalInspectionToolWrapper)tools.getTool();
@@ -533,43 +534,76 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
       tool.inspectionStarted(manager, this, toolWrapper);
     }
 
+    final List<VirtualFile> files = new ArrayList<VirtualFile>();
     scope.accept(new PsiElementVisitor() {
       @Override
       public void visitFile(final PsiFile file) {
         final VirtualFile virtualFile = file.getVirtualFile();
-        if (virtualFile != null) {
-          incrementJobDoneAmount(LOCAL_ANALYSIS, ProjectUtil.calcRelativeToProjectPath(virtualFile, myProject));
-          if (SingleRootFileViewProvider.isTooLarge(virtualFile)) return;
-          if (localScopeFiles != null && !localScopeFiles.add(virtualFile)) return;
+        if (virtualFile != null && (localScopeFiles == null || localScopeFiles.add(virtualFile))) {
+          files.add(virtualFile);
         }
+      }
+    });
 
-        final FileViewProvider viewProvider = psiManager.findViewProvider(virtualFile);
-        final com.intellij.openapi.editor.Document document = viewProvider == null ? null : viewProvider.getDocument();
-        if (document == null || virtualFile.getFileType().isBinary()) return; //do not inspect binary files
-        final LocalInspectionsPass pass = new LocalInspectionsPass(file, document, 0,
-                                                                   file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true);
-        try {
-          final List<InspectionProfileEntry> lTools = new ArrayList<InspectionProfileEntry>();
-          for (Tools tool : localTools) {
-            final InspectionTool enabledTool = (InspectionTool)tool.getEnabledTool(file);
-            if (enabledTool != null) {
-              lTools.add(enabledTool);
-            }
+    // files are inspected concurrently in chunks, their problems are added in the scope order so that the results are the same for each run
+    final int chunkSize = Registry.is("inspection.parallel.batch") ? JobSchedulerImpl.CORES_COUNT * FILES_PER_CORE : 1;
+    for (int i = 0; i < files.size(); i += chunkSize) {
+      final List<VirtualFile> chunk = files.subList(i, Math.min(i + chunkSize, files.size()));
+      Runnable inspectChunk = new Runnable() {
+        @Override
+        public void run() {
+          inspectFiles(chunk, manager, localTools, globalSimpleTools);
+        }
+      };
+      if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+        inspectChunk.run();
+      }
+      else {
+        PsiDocumentManager.getInstance(myProject).commitAndRunReadAction(inspectChunk);
+      }
+    }
+    for (Tools tools : globalSimpleTools) {
+      GlobalInspectionToolWrapper toolWrapper = (GlobalInspectionToolWrapper)tools.getTool();
+      GlobalSimpleInspectionTool tool = (GlobalSimpleInspectionTool)toolWrapper.getTool();
+      tool.inspectionFinished(manager, this, toolWrapper);
+    }
+  }
+
+  private void inspectFiles(@NotNull List<VirtualFile> files,
+                            @NotNull final InspectionManager manager,
+                            @NotNull final List<Tools> localTools,
+                            @NotNull final List<Tools> globalSimpleTools) {
+    final PsiManager psiManager = PsiManager.getInstance(myProject);
+    List<FileInspection> inspections = new ArrayList<FileInspection>(files.size());
+    for (VirtualFile file : files) {
+      inspections.add(new FileInspection(file));
+    }
+
+    boolean result = JobUtil.invokeConcurrentlyUnderProgress(inspections, myProgressIndicator, false, new Processor<FileInspection>() {
+      @Override
+      public boolean process(FileInspection inspection) {
+        VirtualFile virtualFile = inspection.virtualFile;
+        if (!virtualFile.isValid() || SingleRootFileViewProvider.isTooLarge(virtualFile) || virtualFile.getFileType().isBinary()) {
+          return true; //do not inspect binary files
+        }
+        PsiFile file = psiManager.findFile(virtualFile);
+        com.intellij.openapi.editor.Document document = file == null ? null : file.getViewProvider().getDocument();
+        if (document == null) return true;
+
+        LocalInspectionsPass pass = new LocalInspectionsPass(file, document, 0, file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true);
+        List<InspectionProfileEntry> lTools = new ArrayList<InspectionProfileEntry>();
+        for (Tools tool : localTools) {
+          final InspectionTool enabledTool = (InspectionTool)tool.getEnabledTool(file);
+          if (enabledTool != null) {
+            lTools.add(enabledTool);
           }
-          pass.doInspectInBatch((InspectionManagerEx)manager, lTools);
-
-          JobUtil.invokeConcurrentlyUnderProgress(globalSimpleTools, myProgressIndicator, false, new Processor<Tools>() {
-              @Override
-              public boolean process(Tools tools) {
-                GlobalInspectionToolWrapper toolWrapper = (GlobalInspectionToolWrapper)tools.getTool();
-                GlobalSimpleInspectionTool tool = (GlobalSimpleInspectionTool)toolWrapper.getTool();
-                ProblemsHolder problemsHolder = new ProblemsHolder(manager, file, false);
-                tool.checkFile(file, manager, problemsHolder, GlobalInspectionContextImpl.this, toolWrapper);
-                LocalInspectionToolWrapper.addProblemDescriptors(problemsHolder.getResults(), false, GlobalInspectionContextImpl.this, null,
-                                                                 CONVERT, toolWrapper);
-                return true;
-              }
-            });
+        }
+        // set before inspecting, so that the caches of the file are dropped even if the inspection fails
+        inspection.file = file;
+        try {
+          pass.inspectInBatch((InspectionManagerEx)manager, lTools);
+          inspection.pass = pass;
+          inspection.localTools = lTools;
         }
         catch (ProcessCanceledException e) {
           throw e;
@@ -583,15 +617,60 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
         catch (AssertionError e) {
           LOG.error("In file: " + file, e);
         }
-        finally {
-          InjectedLanguageManager.getInstance(myProject).dropFileCaches(file);
-        }
+        return true;
       }
     });
-    for (Tools tools : globalSimpleTools) {
-      GlobalInspectionToolWrapper toolWrapper = (GlobalInspectionToolWrapper)tools.getTool();
-      GlobalSimpleInspectionTool tool = (GlobalSimpleInspectionTool)toolWrapper.getTool();
-      tool.inspectionFinished(manager, this, toolWrapper);
+    if (!result) throw new ProcessCanceledException();
+
+    for (FileInspection inspection : inspections) {
+      incrementJobDoneAmount(LOCAL_ANALYSIS, ProjectUtil.calcRelativeToProjectPath(inspection.virtualFile, myProject));
+      final PsiFile file = inspection.file;
+      if (file == null) continue;
+      try {
+        if (inspection.pass == null) continue; // the failure is already logged
+        inspection.pass.addDescriptorsInBatch((InspectionManagerEx)manager, inspection.localTools);
+
+        JobUtil.invokeConcurrentlyUnderProgress(globalSimpleTools, myProgressIndicator, false, new Processor<Tools>() {
+            @Override
+            public boolean process(Tools tools) {
+              GlobalInspectionToolWrapper toolWrapper = (GlobalInspectionToolWrapper)tools.getTool();
+              GlobalSimpleInspectionTool tool = (GlobalSimpleInspectionTool)toolWrapper.getTool();
+              ProblemsHolder problemsHolder = new ProblemsHolder(manager, file, false);
+              tool.checkFile(file, manager, problemsHolder, GlobalInspectionContextImpl.this, toolWrapper);
+              LocalInspectionToolWrapper.addProblemDescriptors(problemsHolder.getResults(), false, GlobalInspectionContextImpl.this, null,
+                                                               CONVERT, toolWrapper);
+              return true;
+            }
+          });
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      catch (IndexNotReadyException e) {
+        throw e;
+      }
+      catch (Exception e) {
+        LOG.error("In file: " + file, e);
+      }
+      catch (AssertionError e) {
+        LOG.error("In file: " + file, e);
+      }
+      finally {
+        InjectedLanguageManager.getInstance(myProject).dropFileCaches(file);
+      }
+    }
+    psiManager.dropResolveCaches();
+  }
+
+  // the inspected file and the problems found in it, kept only until they are added to the tool wrappers
+  private static class FileInspection {
+    private final VirtualFile virtualFile;
+    private volatile PsiFile file;
+    private volatile LocalInspectionsPass pass;
+    private volatile List<InspectionProfileEntry> localTools;
+
+    private FileInspection(@NotNull VirtualFile virtualFile) {
+      this.virtualFile = virtualFile;
     }
   }
 
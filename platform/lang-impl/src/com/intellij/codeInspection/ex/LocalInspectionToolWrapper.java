@@ -215,4 +215,8 @@ public final class LocalInspectionToolWrapper extends InspectionToolWrapper<Loca
   public boolean runForWholeFile() {
     return myEP == null ? getTool().runForWholeFile() : myEP.runForWholeFile;
   }
+
+  public boolean isElementLocal() {
+    return myEP == null ? getTool().isElementLocal() : myEP.elementLocal;
+  }
 }
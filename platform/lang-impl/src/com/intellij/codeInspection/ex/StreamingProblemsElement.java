@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection.ex;
+
+import com.intellij.codeInspection.InspectionsBundle;
+import com.intellij.openapi.components.PathMacroManager;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+
+/**
+ * Root of the offline results of a global inspection tool which writes the problems to the file instead of keeping them in memory.
+ * Tools fill the problem element after adding it to the parent (see {@link com.intellij.codeInspection.reference.RefManager#export}),
+ * so every problem is written when the next one is added, and the last one is written on {@link #close()}.
+ * The file is created only when the first problem is reported.
+ */
+class StreamingProblemsElement extends Element {
+  private final File myFile;
+  private final PathMacroManager myPathMacroManager;
+  private Writer myWriter;
+  private Element myPendingProblem;
+  private IOException myError;
+
+  StreamingProblemsElement(@NotNull File file, @NotNull PathMacroManager pathMacroManager) {
+    super(InspectionsBundle.message("inspection.problems"));
+    myFile = file;
+    myPathMacroManager = pathMacroManager;
+  }
+
+  @Override
+  public Element addContent(Element child) {
+    if (myError == null) {
+      try {
+        flushPendingProblem();
+      }
+      catch (IOException e) {
+        myError = e; // reported on close
+      }
+    }
+    myPendingProblem = child;
+    return this;
+  }
+
+  @Override
+  public Element addContent(Content child) {
+    if (child instanceof Element) return addContent((Element)child);
+    return super.addContent(child);
+  }
+
+  boolean hasProblems() {
+    return myWriter != null;
+  }
+
+  private void flushPendingProblem() throws IOException {
+    if (myPendingProblem == null) return;
+    if (myWriter == null) {
+      FileUtil.createParentDirs(myFile);
+      myWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(myFile), CharsetToolkit.UTF8_CHARSET));
+      myWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + getName() + " is_local_tool=\"false\">\n");
+    }
+    myPathMacroManager.collapsePaths(myPendingProblem);
+    JDOMUtil.writeElement(myPendingProblem, myWriter, "\n");
+    myWriter.write("\n");
+    myPendingProblem = null;
+  }
+
+  void close() throws IOException {
+    try {
+      if (myError != null) throw myError;
+      flushPendingProblem();
+      if (myWriter != null) {
+        myWriter.write("</" + getName() + ">");
+      }
+    }
+    finally {
+      if (myWriter != null) {
+        myWriter.close();
+      }
+    }
+  }
+}
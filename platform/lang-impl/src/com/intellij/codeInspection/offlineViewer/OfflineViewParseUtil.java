@@ -31,6 +31,7 @@ import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,9 +49,17 @@ public class OfflineViewParseUtil {
   }
 
   public static Map<String, Set<OfflineProblemDescriptor>> parse(final String problems) {
+    return parse(new StringReader(problems));
+  }
+
+  /**
+   * Pulls the problems one by one from the given reader, so that the dump doesn't have to be loaded in memory as a whole.
+   * The reader is closed afterwards.
+   */
+  public static Map<String, Set<OfflineProblemDescriptor>> parse(final Reader problems) {
     final TObjectIntHashMap<String> fqName2IdxMap = new TObjectIntHashMap<String>();
     final Map<String, Set<OfflineProblemDescriptor>> package2Result = new THashMap<String, Set<OfflineProblemDescriptor>>();
-    final XppReader reader = new XppReader(new StringReader(problems));
+    final XppReader reader = new XppReader(problems);
     try {
       while(reader.hasMoreChildren()) {
         reader.moveDown(); //problem
@@ -44,7 +44,9 @@ import javax.swing.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 public abstract class RefElementImpl extends RefEntityImpl implements RefElement {
   private static final ArrayList<RefElement> EMPTY_REFERNCES_LIST = new ArrayList<RefElement>(0);
@@ -56,8 +58,12 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
 
   private final SmartPsiElementPointer myID;
 
-  private ArrayList<RefElement> myOutReferences;
-  private ArrayList<RefElement> myInReferences;
+  // the whole project graph is kept in memory during global inspections, so the edges are stored as compact as possible:
+  // null, the single RefElement, or RefElement[] which grows geometrically and holds the first my*ReferencesCount elements
+  private Object myOutReferences;
+  private Object myInReferences;
+  private int myOutReferencesCount;
+  private int myInReferencesCount;
 
   private String[] mySuppressions = null;
 
@@ -145,36 +151,84 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
 
   @NotNull
   public Collection<RefElement> getOutReferences() {
-    if (myOutReferences == null){
-      return EMPTY_REFERNCES_LIST;
-    }
-    return myOutReferences;
+    return asCollection(myOutReferences, myOutReferencesCount);
   }
 
   @NotNull
   public Collection<RefElement> getInReferences() {
-    if (myInReferences == null){
-      return EMPTY_REFERNCES_LIST;
-    }
-    return myInReferences;
+    return asCollection(myInReferences, myInReferencesCount);
   }
 
   public void addInReference(RefElement refElement) {
-    if (!getInReferences().contains(refElement)) {
-      if (myInReferences == null){
-        myInReferences = new ArrayList<RefElement>(1);
-      }
-      myInReferences.add(refElement);
+    if (indexOf(myInReferences, myInReferencesCount, refElement) < 0) {
+      myInReferences = addReference(myInReferences, myInReferencesCount++, refElement);
     }
   }
 
   public void addOutReference(RefElement refElement) {
-    if (!getOutReferences().contains(refElement)) {
-      if (myOutReferences == null){
-        myOutReferences = new ArrayList<RefElement>(1);
+    if (indexOf(myOutReferences, myOutReferencesCount, refElement) < 0) {
+      myOutReferences = addReference(myOutReferences, myOutReferencesCount++, refElement);
+    }
+  }
+
+  private void removeInReference(RefElement refElement) {
+    int index = indexOf(myInReferences, myInReferencesCount, refElement);
+    if (index >= 0) {
+      myInReferences = removeReference(myInReferences, myInReferencesCount--, index);
+    }
+  }
+
+  private void removeOutReference(RefElement refElement) {
+    int index = indexOf(myOutReferences, myOutReferencesCount, refElement);
+    if (index >= 0) {
+      myOutReferences = removeReference(myOutReferences, myOutReferencesCount--, index);
+    }
+  }
+
+  @NotNull
+  private static Collection<RefElement> asCollection(@Nullable Object references, int count) {
+    if (references == null) return EMPTY_REFERNCES_LIST;
+    if (references instanceof RefElement) return Collections.singletonList((RefElement)references);
+    return Arrays.asList((RefElement[])references).subList(0, count);
+  }
+
+  private static int indexOf(@Nullable Object references, int count, RefElement refElement) {
+    if (references instanceof RefElement[]) {
+      RefElement[] array = (RefElement[])references;
+      for (int i = 0; i < count; i++) {
+        if (array[i].equals(refElement)) return i;
+      }
+      return -1;
+    }
+    return references != null && references.equals(refElement) ? 0 : -1;
+  }
+
+  @NotNull
+  private static Object addReference(@Nullable Object references, int count, @NotNull RefElement refElement) {
+    if (references == null) return refElement;
+    RefElement[] array;
+    if (references instanceof RefElement) {
+      array = new RefElement[2];
+      array[0] = (RefElement)references;
+    }
+    else {
+      array = (RefElement[])references;
+      if (count == array.length) {
+        array = Arrays.copyOf(array, count + (count >> 1));
       }
-      myOutReferences.add(refElement);
     }
+    array[count] = refElement;
+    return array;
+  }
+
+  @Nullable
+  private static Object removeReference(@NotNull Object references, int count, int index) {
+    if (references instanceof RefElement) return null;
+    RefElement[] array = (RefElement[])references;
+    if (count == 2) return array[1 - index];
+    System.arraycopy(array, index + 1, array, index, count - index - 1);
+    array[count - 1] = null;
+    return array;
   }
 
   public void setEntry(boolean entry) {
@@ -210,11 +264,11 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
     }
 
     for (RefElement refCallee : getOutReferences()) {
-      refCallee.getInReferences().remove(this);
+      ((RefElementImpl)refCallee).removeInReference(this);
     }
 
     for (RefElement refCaller : getInReferences()) {
-      refCaller.getOutReferences().remove(this);
+      ((RefElementImpl)refCaller).removeOutReference(this);
     }
   }
 
@@ -133,6 +133,11 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     return myEditor;
   }
 
+  @TestOnly
+  public EditorHyperlinkSupport getHyperlinks() {
+    return myHyperlinks;
+  }
+
   public void scrollToEnd() {
     if (myEditor == null) return;
     myEditor.getCaretModel().moveToOffset(myEditor.getDocument().getTextLength());
@@ -235,6 +240,23 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
   private final Alarm myFlushAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
 
   private final Set<MyFlushRunnable> myCurrentRequests = new HashSet<MyFlushRunnable>(); 
+  /**
+   * Time of the last {@link #flushDeferredText() flush}. Is used to coalesce flushes when the managed process produces more output
+   * than the cyclic buffer holds - there is no point in pushing every cyclic buffer's worth of text to the document as the
+   * document is cyclic as well, so we flush at most once per {@link #FLUSH_DELAY} and let the buffer drop the text in between.
+   */
+  private volatile long myLastFlushTime;
+  /**
+   * Light-weight filters are applied to the flushed lines in this alarm's thread, so that a process flooding the console doesn't keep the
+   * EDT busy with them. The hyperlinks they find are added to the editor in the EDT afterwards.
+   */
+  private final Alarm myFilterAlarm = new Alarm(Alarm.ThreadToUse.OWN_THREAD, this);
+  private volatile int myFilterTicket;
+  /**
+   * Length of the text removed from the beginning of the document, e.g. by the cyclic buffer. Filters run over a copy of the text, and
+   * the offsets of their results are shifted by the text removed in between before the results are added to the editor.
+   */
+  private volatile long myRemovedFromStartLength;
   
   protected final CompositeFilter myPredefinedMessageFilter;
   protected final CompositeFilter myCustomFilter;
@@ -331,6 +353,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     cancelAllFlushRequests();
     addFlushRequest(new MyClearRunnable());
     cancelHeavyAlarm();
+    cancelFilters();
   }
 
   @Override
@@ -525,7 +548,8 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
         }
       }
       if (myEditor != null && !myFlushAlarm.isDisposed()) {
-        final boolean shouldFlushNow = myBuffer.isUseCyclicBuffer() && myBuffer.getLength() >= myBuffer.getCyclicBufferSize();
+        final boolean shouldFlushNow = myBuffer.isUseCyclicBuffer() && myBuffer.getLength() >= myBuffer.getCyclicBufferSize()
+                                       && System.currentTimeMillis() - myLastFlushTime >= FLUSH_DELAY;
         addFlushRequest(new MyFlushRunnable(), shouldFlushNow ? 0 : FLUSH_DELAY);
       }
     }
@@ -587,6 +611,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
         document = myEditor.getDocument();
         myFoldingAlarm.cancelAllRequests();
         cancelHeavyAlarm();
+        cancelFilters();
       }
       CommandProcessor.getInstance().executeCommand(myProject, new Runnable() {
         @Override
@@ -629,7 +654,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
           myEditor.getScrollingModel().accumulateViewportChanges();
         }
         try {
-          String[] strings = text.split("\\r");
+          String[] strings = text.indexOf('\r') < 0 ? new String[]{text} : text.split("\\r");
           for (int i = 0; i < strings.length - 1; i++) {
             document.insertString(document.getTextLength(), strings[i]);
             int lastLine = document.getLineCount() - 1;
@@ -682,6 +707,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     if (isAtEndOfDocument) {
       EditorUtil.scrollToTheEnd(myEditor);
     }
+    myLastFlushTime = System.currentTimeMillis();
   }
 
   private void cancelHeavyAlarm() {
@@ -691,6 +717,11 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     }
   }
 
+  private void cancelFilters() {
+    myFilterAlarm.cancelAllRequests();
+    ++myFilterTicket;
+  }
+
   private void flushDeferredUserInput() {
     final String textToSend = myBuffer.cutFirstUserInputLine();
     if (textToSend == null) {
@@ -780,6 +811,14 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
 
     final int bufferSize = myBuffer.isUseCyclicBuffer() ? myBuffer.getCyclicBufferSize() : 0;
     editor.getDocument().setCyclicBufferSize(bufferSize);
+    editor.getDocument().addDocumentListener(new DocumentAdapter() {
+      @Override
+      public void documentChanged(DocumentEvent event) {
+        if (event.getOffset() == 0 && event.getNewLength() == 0) {
+          myRemovedFromStartLength += event.getOldLength();
+        }
+      }
+    });
 
     editor.putUserData(CONSOLE_VIEW_IN_EDITOR_VIEW, this);
 
@@ -892,7 +931,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     ApplicationManager.getApplication().assertIsDispatchThread();
     PsiDocumentManager.getInstance(myProject).commitAllDocuments();
     if (canHighlightHyperlinks) {
-      myHyperlinks.highlightHyperlinks(myCustomFilter, myPredefinedMessageFilter, line1, endLine);
+      runFilters(line1, endLine);
     }
     
     if (myAllowHeavyFilters && myPredefinedMessageFilter.isAnyHeavy() && myPredefinedMessageFilter.shouldRunHeavy()) {
@@ -903,6 +942,83 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     }
   }
 
+  private void runFilters(int line1, int endLine) {
+    final int startLine = Math.max(0, line1);
+    if (startLine > endLine) return;
+
+    final Document document = myEditor.getDocument();
+    final int startOffset = document.getLineStartOffset(startLine);
+    final int endOffset = Math.min(document.getLineEndOffset(endLine) + 1, document.getTextLength()); // add '\n'
+    final String text = new String(document.getText(new TextRange(startOffset, endOffset)));
+    final long removedLength = myRemovedFromStartLength;
+    final int ticket = myFilterTicket;
+    myFilterAlarm.addRequest(new Runnable() {
+      @Override
+      public void run() {
+        final List<FilterResult> results = new ArrayList<FilterResult>();
+        int lineStart = 0;
+        while (lineStart < text.length() && ticket == myFilterTicket && !myProject.isDisposed()) {
+          int lineEnd = text.indexOf('\n', lineStart);
+          lineEnd = lineEnd < 0 ? text.length() : lineEnd + 1;
+          // skip the lines the cyclic buffer has already removed from the document
+          if (removedLength + startOffset + lineStart >= myRemovedFromStartLength) {
+            final String line = text.substring(lineStart, lineEnd);
+            final int entireLength = startOffset + lineEnd;
+            Filter.Result result = ApplicationManager.getApplication().runReadAction(new Computable<Filter.Result>() {
+              @Override
+              public Filter.Result compute() {
+                Filter.Result result = myCustomFilter.applyFilter(line, entireLength);
+                return result != null ? result : myPredefinedMessageFilter.applyFilter(line, entireLength);
+              }
+            });
+            if (result != null) {
+              results.add(new FilterResult(startOffset + lineStart, line, result));
+            }
+          }
+          lineStart = lineEnd;
+        }
+        if (results.isEmpty()) return;
+
+        SwingUtilities.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (ticket != myFilterTicket || myEditor == null) return;
+            addFilterResults(results, (int)(myRemovedFromStartLength - removedLength));
+          }
+        });
+      }
+    }, 0);
+  }
+
+  private void addFilterResults(List<FilterResult> results, int removedSinceFiltering) {
+    final Document document = myEditor.getDocument();
+    final CharSequence chars = document.getCharsSequence();
+    for (FilterResult each : results) {
+      // the line may have been removed by the cyclic buffer or overwritten after a carriage return meanwhile
+      if (!CharArrayUtil.regionMatches(chars, each.myLineStart - removedSinceFiltering, each.myLine)) continue;
+      Filter.Result result = each.myResult;
+      if (removedSinceFiltering != 0) {
+        result = new Filter.Result(result.highlightStartOffset - removedSinceFiltering, result.highlightEndOffset - removedSinceFiltering,
+                                   result.hyperlinkInfo, result.highlightAttributes);
+      }
+      if (result.highlightStartOffset >= 0 && result.highlightEndOffset <= document.getTextLength()) {
+        myHyperlinks.addFilterResult(result);
+      }
+    }
+  }
+
+  private static class FilterResult {
+    private final int myLineStart;
+    private final String myLine;
+    private final Filter.Result myResult;
+
+    private FilterResult(int lineStart, String line, Filter.Result result) {
+      myLineStart = lineStart;
+      myLine = line;
+      myResult = result;
+    }
+  }
+
   private void runHeavyFilters(int line1, int endLine) {
     final int startLine = Math.max(0, line1);
 
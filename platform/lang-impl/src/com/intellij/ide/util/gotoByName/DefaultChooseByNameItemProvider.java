@@ -25,6 +25,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.codeStyle.NameUtil.Matcher;
 import com.intellij.psi.util.proximity.PsiProximityComparator;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.Function;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
@@ -40,6 +41,8 @@ import java.util.List;
 public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider {
   private static final Logger LOG = Logger.getInstance("#com.intellij.ide.util.gotoByName.ChooseByNameIdea");
   private WeakReference<PsiElement> myContext;
+  // names matched by the last complete search, the next search only checks them if the user has just typed more characters
+  private volatile MatchedNames myLastMatchedNames;
 
   public DefaultChooseByNameItemProvider(PsiElement context) {
     myContext = new WeakReference<PsiElement>(context);
@@ -190,7 +193,7 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     return res;
   }
 
-  private static void getNamesByPattern(ChooseByNameBase base,
+  private void getNamesByPattern(ChooseByNameBase base,
                                  String[] names,
                                  Computable<Boolean> cancelled,
                                  final List<String> list,
@@ -206,10 +209,14 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
 
     final NameUtil.Matcher matcher = buildPatternMatcher(pattern);
 
+    boolean customMatcher = base.getModel() instanceof CustomMatcherModel;
+    MatchedNames lastMatched = myLastMatchedNames;
+    String[] candidates = !customMatcher && lastMatched != null && lastMatched.isNarrowedBy(names, pattern) ? lastMatched.myMatched : names;
+    int start = list.size();
     try {
-      for (String name : names) {
+      for (String name : candidates) {
         if (cancelled != null && cancelled.compute()) {
-          break;
+          return;
         }
         if (matches(base, pattern, matcher, name)) {
           list.add(name);
@@ -218,6 +225,31 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     }
     catch (Exception e) {
       // Do nothing. No matches appears valid result for "bad" pattern
+      return;
+    }
+    if (!customMatcher) {
+      myLastMatchedNames = new MatchedNames(names, pattern, ArrayUtil.toStringArray(list.subList(start, list.size())));
+    }
+  }
+
+  static class MatchedNames {
+    private final String[] myNames;
+    private final String myPattern;
+    private final String[] myMatched;
+
+    MatchedNames(String[] names, String pattern, String[] matched) {
+      myNames = names;
+      myPattern = pattern;
+      myMatched = matched;
+    }
+
+    // a name matching a pattern also matches all its prefixes; patterns with spaces are matched word by word and aren't reused
+    boolean isNarrowedBy(String[] names, String pattern) {
+      if (names != myNames || myPattern.indexOf(' ') >= 0) return false;
+      boolean wildcardSuffix = myPattern.endsWith("*");
+      if (wildcardSuffix != pattern.endsWith("*")) return false;
+      String lastPrefix = wildcardSuffix ? myPattern.substring(0, myPattern.length() - 1) : myPattern;
+      return pattern.startsWith(lastPrefix);
     }
   }
 
@@ -236,7 +268,7 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     return matches;
   }
 
-  private static NameUtil.Matcher buildPatternMatcher(String pattern) {
+  static NameUtil.Matcher buildPatternMatcher(String pattern) {
     return NameUtil.buildMatcher(pattern, 0, true, true, pattern.toLowerCase().equals(pattern));
   }
 
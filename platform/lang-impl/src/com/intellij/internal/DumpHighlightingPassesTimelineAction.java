@@ -0,0 +1,76 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.internal;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.codeInsight.daemon.impl.DaemonCodeAnalyzerImpl;
+import com.intellij.codeInsight.daemon.impl.DaemonProfiler;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Prints the highlighting passes timeline collected by {@link DaemonProfiler} and the resolve cache statistics to the log
+ * and saves them along with the comma separated statistics to the chosen folder.
+ */
+public class DumpHighlightingPassesTimelineAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.internal.DumpHighlightingPassesTimelineAction");
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    Project project = e.getData(PlatformDataKeys.PROJECT);
+    if (project == null) return;
+    if (!DaemonProfiler.isEnabled()) {
+      Messages.showInfoMessage(project, "Set the 'daemon.profiler.enabled' registry key to collect highlighting timings",
+                               "Highlighting Passes Timeline");
+      return;
+    }
+
+    DaemonProfiler profiler = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(project)).getProfiler();
+    String timeline = profiler.dumpTimeline() + ResolveCache.getInstance(project).getStatistics() + "\n";
+    System.out.println(timeline);
+    LOG.info(timeline);
+
+    VirtualFile dir = FileChooser.chooseFile(project, FileChooserDescriptorFactory.createSingleFolderDescriptor(), null);
+    if (dir == null) return;
+    File root = VfsUtil.virtualToIoFile(dir);
+    try {
+      FileUtil.writeToFile(new File(root, "highlighting-timeline.txt"), timeline);
+      FileUtil.writeToFile(new File(root, "highlighting-passes.csv"), profiler.dumpCsv());
+    }
+    catch (IOException e1) {
+      LOG.error(e1);
+    }
+  }
+
+  @Override
+  public void update(AnActionEvent e) {
+    e.getPresentation().setEnabled(e.getData(PlatformDataKeys.PROJECT) != null);
+  }
+}
@@ -58,7 +58,11 @@ public class SerializedStubTree {
       myStubElement = null;
       if (willIndexStub) return stubElement;
     }
-    return SerializationManager.getInstance().deserialize(new UnsyncByteArrayInputStream(myBytes));
+    if (willIndexStub) {
+      // indexing goes through all the stubs anyway
+      return SerializationManager.getInstance().deserialize(new UnsyncByteArrayInputStream(myBytes, 0, myLength));
+    }
+    return SerializationManager.getInstance().deserializeLazily(myBytes, myLength);
   }
 
   public boolean equals(final Object that) {
@@ -43,13 +43,16 @@ import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IStubFileElementType;
 import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.BloomFilterBase;
 import com.intellij.util.CommonProcessors;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.*;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.DataInputOutputUtil;
 import gnu.trove.THashMap;
+import gnu.trove.THashSet;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
@@ -61,6 +64,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
@@ -77,6 +82,10 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.stubs.StubIndexImpl");
   private final Map<StubIndexKey<?,?>, MyIndex<?>> myIndices = new THashMap<StubIndexKey<?,?>, MyIndex<?>>();
   private final TObjectIntHashMap<ID<?, ?>> myIndexIdToVersionMap = new TObjectIntHashMap<ID<?, ?>>();
+  // key sets of the indices whose keys have been requested, kept up-to-date on index updates not to enumerate the storage every time
+  private final ConcurrentMap<StubIndexKey<?, ?>, KeySnapshot<?>> myKeySnapshots = new ConcurrentHashMap<StubIndexKey<?, ?>, KeySnapshot<?>>();
+  // filters of the keys present in the indices which have been asked for mayContainKey, kept up-to-date the same way
+  private final ConcurrentMap<StubIndexKey<?, ?>, KeyFilter> myKeyFilters = new ConcurrentHashMap<StubIndexKey<?, ?>, KeyFilter>();
 
   private StubIndexState myPreviouslyRegistered;
 
@@ -380,6 +389,113 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     return Collections.emptyList();
   }
 
+  /**
+   * Processes all keys of the index without copying them. Like {@link #getAllKeys}, may report keys which no longer have values.
+   */
+  @Override
+  public <K> boolean processAllKeys(@NotNull StubIndexKey<K, ?> indexKey, @NotNull Project project, @NotNull Processor<K> processor) {
+    FileBasedIndex.getInstance().ensureUpToDate(StubUpdatingIndex.INDEX_ID, project, GlobalSearchScope.allScope(project));
+
+    KeySnapshot<K> snapshot = getKeySnapshot(indexKey);
+    if (snapshot != null) {
+      return snapshot.process(processor);
+    }
+    return ContainerUtil.process(getAllKeys(indexKey, project), processor);
+  }
+
+  @Nullable
+  private <K> KeySnapshot<K> getKeySnapshot(@NotNull StubIndexKey<K, ?> indexKey) {
+    //noinspection unchecked
+    KeySnapshot<K> snapshot = (KeySnapshot<K>)myKeySnapshots.get(indexKey);
+    if (snapshot == null) {
+      snapshot = new KeySnapshot<K>();
+      //noinspection unchecked
+      KeySnapshot<K> existing = (KeySnapshot<K>)myKeySnapshots.putIfAbsent(indexKey, snapshot);
+      if (existing != null) {
+        snapshot = existing;
+      }
+      else {
+        // registered before filling so that concurrent index updates are not lost
+        final KeySnapshot<K> newSnapshot = snapshot;
+        final MyIndex<K> index = (MyIndex<K>)myIndices.get(indexKey);
+        try {
+          index.processAllKeys(new Processor<K>() {
+            @Override
+            public boolean process(K key) {
+              newSnapshot.add(key);
+              return true;
+            }
+          });
+          newSnapshot.setComplete();
+        }
+        catch (StorageException e) {
+          myKeySnapshots.remove(indexKey, newSnapshot);
+          forceRebuild(e);
+        }
+        catch (RuntimeException e) {
+          myKeySnapshots.remove(indexKey, newSnapshot);
+          throw e;
+        }
+      }
+    }
+    return snapshot.isComplete() ? snapshot : null;
+  }
+
+  @Override
+  public <K> boolean mayContainKey(@NotNull StubIndexKey<K, ?> indexKey, @NotNull K key, @NotNull Project project) {
+    FileBasedIndex.getInstance().ensureUpToDate(StubUpdatingIndex.INDEX_ID, project, GlobalSearchScope.allScope(project));
+
+    KeyFilter filter = getKeyFilter(indexKey);
+    return filter == null || filter.mayContain(key.hashCode());
+  }
+
+  @Nullable
+  private <K> KeyFilter getKeyFilter(@NotNull StubIndexKey<K, ?> indexKey) {
+    KeyFilter filter = myKeyFilters.get(indexKey);
+    if (filter == null) {
+      filter = new KeyFilter();
+      KeyFilter existing = myKeyFilters.putIfAbsent(indexKey, filter);
+      if (existing != null) {
+        filter = existing;
+      }
+      else {
+        // registered before filling so that concurrent index updates are not lost: an update reads the filter under
+        // the index write lock, so it either has finished before the keys are enumerated or sees the registered filter
+        final KeyFilter newFilter = filter;
+        final MyIndex<K> index = (MyIndex<K>)myIndices.get(indexKey);
+        final Lock lock = index.getReadLock();
+        lock.lock();
+        try {
+          index.processAllKeys(new Processor<K>() {
+            @Override
+            public boolean process(K key) {
+              newFilter.add(key.hashCode());
+              return true;
+            }
+          });
+          newFilter.build();
+        }
+        catch (StorageException e) {
+          myKeyFilters.remove(indexKey, newFilter);
+          forceRebuild(e);
+        }
+        catch (RuntimeException e) {
+          myKeyFilters.remove(indexKey, newFilter);
+          throw e;
+        }
+        finally {
+          lock.unlock();
+        }
+      }
+    }
+    if (filter.isOverflown()) {
+      // too many keys were added since it was built, the next request will build a bigger one
+      myKeyFilters.remove(indexKey, filter);
+      return null;
+    }
+    return filter.isBuilt() ? filter : null;
+  }
+
   @Override
   @NotNull
   public String getComponentName() {
@@ -425,6 +541,8 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
 
 
   public void clearAllIndices() {
+    myKeySnapshots.clear();
+    myKeyFilters.clear();
     for (UpdatableIndex index : myIndices.values()) {
       try {
         index.clear();
@@ -474,12 +592,35 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
   public <K> void updateIndex(@NotNull StubIndexKey key, int fileId, @NotNull final Map<K, TIntArrayList> oldValues, @NotNull Map<K, TIntArrayList> newValues) {
     try {
       final MyIndex<K> index = (MyIndex<K>)myIndices.get(key);
-      index.updateWithMap(fileId, newValues, new Callable<Collection<K>>() {
-        @Override
-        public Collection<K> call() throws Exception {
-          return oldValues.keySet();
+      final Lock lock = index.getWriteLock();
+      lock.lock();
+      try {
+        // the filter must know the new keys before they become visible in the index. It's read under the write lock,
+        // since a filter registered after this point enumerates the keys after the update
+        KeyFilter filter = myKeyFilters.get(key);
+        if (filter != null) {
+          for (K k : newValues.keySet()) {
+            filter.add(k.hashCode());
+          }
         }
-      });
+        index.updateWithMap(fileId, newValues, new Callable<Collection<K>>() {
+          @Override
+          public Collection<K> call() throws Exception {
+            return oldValues.keySet();
+          }
+        });
+      }
+      finally {
+        lock.unlock();
+      }
+
+      //noinspection unchecked
+      KeySnapshot<K> snapshot = (KeySnapshot<K>)myKeySnapshots.get(key);
+      if (snapshot != null) {
+        for (K k : newValues.keySet()) {
+          snapshot.add(k);
+        }
+      }
     }
     catch (StorageException e) {
       LOG.info(e);
@@ -487,6 +628,123 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     }
   }
 
+  /**
+   * Append-only set of index keys. Keys are never removed since, like in the index storage, a key may stay after its last value
+   * is gone, and callers have to check that the key still has values anyway. It is processed without locking and copying:
+   * the keys are published via the volatile size after they are written to the array.
+   */
+  private static class KeySnapshot<K> {
+    private final Set<K> mySet = new THashSet<K>(); // guarded by this
+    private volatile Object[] myKeys = new Object[16];
+    private volatile int mySize;
+    private volatile boolean myComplete;
+
+    synchronized void add(K key) {
+      if (!mySet.add(key)) return;
+      Object[] keys = myKeys;
+      if (mySize == keys.length) {
+        keys = Arrays.copyOf(keys, keys.length * 2);
+        myKeys = keys;
+      }
+      keys[mySize] = key;
+      mySize++;
+    }
+
+    void setComplete() {
+      myComplete = true;
+    }
+
+    boolean isComplete() {
+      return myComplete;
+    }
+
+    boolean process(@NotNull Processor<K> processor) {
+      int size = mySize;
+      Object[] keys = myKeys;
+      for (int i = 0; i < size; i++) {
+        //noinspection unchecked
+        if (!processor.process((K)keys[i])) return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Bloom filter of the key hashes of an index. Like {@link KeySnapshot}, it only grows, so removed keys just become false positives.
+   * The hashes reported while the index keys are being enumerated are collected to size the filter by their count.
+   */
+  private static class KeyFilter {
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+
+    private TIntArrayList myPendingHashes = new TIntArrayList(); // guarded by this
+    private volatile Filter myFilter;
+    private int myCapacity; // guarded by this
+    private int myAdded; // guarded by this
+    private volatile boolean myOverflown;
+
+    synchronized void add(int hash) {
+      Filter filter = myFilter;
+      if (filter == null) {
+        myPendingHashes.add(hash);
+        return;
+      }
+      // the keys of the reindexed files are mostly there already
+      if (filter.mayContain(hash)) return;
+      filter.add(hash);
+      if (++myAdded > myCapacity) {
+        myOverflown = true;
+      }
+      myFilter = filter; // publish the new bits
+    }
+
+    synchronized void build() {
+      int count = myPendingHashes.size();
+      // leave room for the keys added later
+      myCapacity = Math.max(count * 2, MIN_CAPACITY);
+      myAdded = count;
+      Filter filter = new Filter(myCapacity, FALSE_POSITIVE_PROBABILITY);
+      for (int i = 0; i < count; i++) {
+        filter.add(myPendingHashes.getQuick(i));
+      }
+      myPendingHashes = null;
+      myFilter = filter;
+    }
+
+    boolean isBuilt() {
+      return myFilter != null;
+    }
+
+    boolean isOverflown() {
+      return myOverflown;
+    }
+
+    boolean mayContain(int hash) {
+      Filter filter = myFilter;
+      return filter == null || filter.mayContain(hash);
+    }
+
+    private static class Filter extends BloomFilterBase {
+      Filter(int maxElementCount, double probability) {
+        super(maxElementCount, probability);
+      }
+
+      void add(int hash) {
+        addIt(hash, secondHash(hash));
+      }
+
+      boolean mayContain(int hash) {
+        return maybeContains(hash, secondHash(hash));
+      }
+
+      private static int secondHash(int hash) {
+        // the keys of the int indices are hash codes themselves, so they need to be mixed for the second function
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+      }
+    }
+  }
+
   private static class MyIndex<K> extends MapReduceIndex<K, TIntArrayList, Void> {
     public MyIndex(final IndexStorage<K, TIntArrayList> storage) {
       super(null, null, storage);
@@ -280,15 +280,19 @@ public class EditorHyperlinkSupport {
         result = predefinedMessageFilter.applyFilter(text, endOffset);
       }
       if (result != null) {
-        if (result.hyperlinkInfo != null) {
-          addHyperlink(result.highlightStartOffset, result.highlightEndOffset, result.highlightAttributes, result.hyperlinkInfo);
-        } else if (result.highlightAttributes != null) {
-          addHighlighter(result.highlightStartOffset, result.highlightEndOffset, result.highlightAttributes);
-        }
+        addFilterResult(result);
       }
     }
   }
 
+  public void addFilterResult(@NotNull Filter.Result result) {
+    if (result.hyperlinkInfo != null) {
+      addHyperlink(result.highlightStartOffset, result.highlightEndOffset, result.highlightAttributes, result.hyperlinkInfo);
+    } else if (result.highlightAttributes != null) {
+      addHighlighter(result.highlightStartOffset, result.highlightEndOffset, result.highlightAttributes);
+    }
+  }
+
   private void addHighlighter(int highlightStartOffset, int highlightEndOffset, TextAttributes highlightAttributes) {
     final RangeHighlighter highlighter = myEditor.getMarkupModel().addRangeHighlighter(highlightStartOffset,
                                                                                        highlightEndOffset,
@@ -81,6 +81,11 @@ public class MarkupModelWindow extends UserDataHolderBase implements MarkupModel
     myHostModel.changeAttributesInBatch(highlighter, changeAttributesAction);
   }
 
+  @Override
+  public void runInBatchMode(@NotNull Runnable action) {
+    myHostModel.runInBatchMode(action);
+  }
+
   @Override
   @NotNull
   public RangeHighlighter addLineHighlighter(final int line, final int layer, final TextAttributes textAttributes) {
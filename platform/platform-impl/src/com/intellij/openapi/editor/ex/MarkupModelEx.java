@@ -59,4 +59,8 @@ public interface MarkupModelEx extends MarkupModel {
   void changeAttributesInBatch(@NotNull RangeHighlighterEx highlighter, @NotNull Consumer<RangeHighlighterEx> changeAttributesAction);
 
   boolean sweep(int start, int end, @NotNull final SweepProcessor<RangeHighlighterEx> sweepProcessor);
+
+  // optimization: runs the action which adds/removes/changes highlighters as one batch,
+  // notifying BulkAwareMarkupModelListeners only once about its start and finish
+  void runInBatchMode(@NotNull Runnable action);
 }
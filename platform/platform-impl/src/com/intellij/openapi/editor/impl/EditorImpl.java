@@ -49,6 +49,7 @@ import com.intellij.openapi.editor.ex.util.EditorUtil;
 import com.intellij.openapi.editor.ex.util.EmptyEditorHighlighter;
 import com.intellij.openapi.editor.highlighter.EditorHighlighter;
 import com.intellij.openapi.editor.highlighter.HighlighterClient;
+import com.intellij.openapi.editor.impl.event.BulkAwareMarkupModelListener;
 import com.intellij.openapi.editor.impl.event.MarkupModelListener;
 import com.intellij.openapi.editor.impl.softwrap.SoftWrapAppliancePlaces;
 import com.intellij.openapi.editor.impl.softwrap.SoftWrapDrawingType;
@@ -316,7 +317,14 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
     }
     myMouseMotionListeners = ContainerUtil.createEmptyCOWList();
 
-    MarkupModelListener markupModelListener = new MarkupModelListener() {
+    MarkupModelListener markupModelListener = new BulkAwareMarkupModelListener() {
+      private int myBatchDepth;
+      // affected area of the highlighters changed during the batch
+      private int myBatchStart = Integer.MAX_VALUE;
+      private int myBatchEnd = -1;
+      private boolean myBatchStripeChanged;
+      private boolean myBatchGutterChanged;
+
       @Override
       public void afterAdded(@NotNull RangeHighlighterEx highlighter) {
         attributesChanged(highlighter);
@@ -334,18 +342,49 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
 
         int start = Math.min(Math.max(highlighter.getAffectedAreaStartOffset(), 0), textLength);
         int end = Math.min(Math.max(highlighter.getAffectedAreaEndOffset(), 0), textLength);
+        GutterIconRenderer renderer = highlighter.getGutterIconRenderer();
+        // optimization: there is no need to repaint error stripe if the highlighter is invisible on it
+        boolean stripeChanged = renderer != null || highlighter.getErrorStripeMarkColor() != null;
+
+        if (myBatchDepth > 0) {
+          myBatchStart = Math.min(myBatchStart, start);
+          myBatchEnd = Math.max(myBatchEnd, end);
+          myBatchStripeChanged |= stripeChanged;
+          myBatchGutterChanged |= renderer != null;
+          return;
+        }
+        repaintHighlighterArea(start, end, stripeChanged, renderer != null);
+      }
+
+      @Override
+      public void batchStarted() {
+        myBatchDepth++;
+      }
+
+      @Override
+      public void batchFinished() {
+        if (myBatchDepth == 0) return; // the listener was added in the middle of the batch
+        if (--myBatchDepth > 0) return;
+        if (myBatchEnd >= 0 && !myDocument.isInBulkUpdate()) {
+          int textLength = myDocument.getTextLength();
+          repaintHighlighterArea(Math.min(myBatchStart, textLength), Math.min(myBatchEnd, textLength), myBatchStripeChanged, myBatchGutterChanged);
+        }
+        myBatchStart = Integer.MAX_VALUE;
+        myBatchEnd = -1;
+        myBatchStripeChanged = false;
+        myBatchGutterChanged = false;
+      }
 
+      private void repaintHighlighterArea(int start, int end, boolean repaintStripe, boolean updateGutter) {
         int startLine = start == -1 ? 0 : myDocument.getLineNumber(start);
         int endLine = end == -1 ? myDocument.getLineCount() : myDocument.getLineNumber(end);
         repaintLines(Math.max(0, startLine - 1), Math.min(endLine + 1, getDocument().getLineCount()));
-        GutterIconRenderer renderer = highlighter.getGutterIconRenderer();
 
-        // optimization: there is no need to repaint error stripe if the highlighter is invisible on it
-        if (renderer != null || highlighter.getErrorStripeMarkColor() != null) {
+        if (repaintStripe) {
           ((EditorMarkupModelImpl)getMarkupModel()).repaint(start, end);
         }
 
-        if (renderer != null) {
+        if (updateGutter) {
           updateGutterSize();
         }
         updateCaretCursor();
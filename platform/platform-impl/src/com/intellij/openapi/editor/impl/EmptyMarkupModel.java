@@ -60,6 +60,11 @@ public class EmptyMarkupModel implements MarkupModelEx {
                                       @NotNull Consumer<RangeHighlighterEx> changeAttributesAction) {
   }
 
+  @Override
+  public void runInBatchMode(@NotNull Runnable action) {
+    action.run();
+  }
+
   @Override
   @NotNull
   public RangeHighlighter addLineHighlighter(int line, int layer, @Nullable TextAttributes textAttributes) {
@@ -98,23 +98,42 @@ abstract class FoldRegionsTree {
 
     Arrays.sort(myCachedTopLevelRegions, BY_END_OFFSET);
 
-    FoldRegion[] visibleArrayed = toFoldArray(visible);
-    for (FoldRegion visibleRegion : visibleArrayed) {
-      for (FoldRegion topLevelRegion : myCachedTopLevelRegions) {
-        if (contains(topLevelRegion, visibleRegion)) {
-          visible.remove(visibleRegion);
-          break;
-        }
+    // Top-level regions don't intersect, so the only candidate to contain particular region is the first top-level region
+    // which ends after its start. That allows to filter out hidden regions by binary search instead of checking every pair.
+    int[] topLevelEndOffsets = new int[myCachedTopLevelRegions.length];
+    for (int i = 0; i < topLevelEndOffsets.length; i++) {
+      topLevelEndOffsets[i] = myCachedTopLevelRegions[i].getEndOffset();
+    }
+    ArrayList<FoldRegion> notHidden = new ArrayList<FoldRegion>(visible.size());
+    for (FoldRegion visibleRegion : visible) {
+      int i = findFirstEndingAfter(topLevelEndOffsets, visibleRegion.getStartOffset());
+      if (i >= topLevelEndOffsets.length || !contains(myCachedTopLevelRegions[i], visibleRegion)) {
+        notHidden.add(visibleRegion);
       }
     }
 
-    myCachedVisible = toFoldArray(visible);
+    myCachedVisible = toFoldArray(notHidden);
 
     Arrays.sort(myCachedVisible, BY_END_OFFSET_REVERSE);
 
     updateCachedOffsets();
   }
 
+  private static int findFirstEndingAfter(@NotNull int[] sortedEndOffsets, int offset) {
+    int start = 0;
+    int end = sortedEndOffsets.length - 1;
+    while (start <= end) {
+      int i = (start + end) >>> 1;
+      if (sortedEndOffsets[i] <= offset) {
+        start = i + 1;
+      }
+      else {
+        end = i - 1;
+      }
+    }
+    return start;
+  }
+
   @NotNull
   private static FoldRegion[] toFoldArray(@NotNull List<FoldRegion> topLevels) {
     return topLevels.isEmpty() ? FoldRegion.EMPTY_ARRAY : topLevels.toArray(new FoldRegion[topLevels.size()]);
@@ -286,6 +305,9 @@ abstract class FoldRegionsTree {
     if (!isFoldingEnabledAndUpToDate()) return FoldRegion.EMPTY_ARRAY;
     ArrayList<FoldRegion> allCollapsed = new ArrayList<FoldRegion>();
     for (FoldRegion region : myRegions) {
+      // invalid regions are kept until the next rebuild and may be out of order, the valid ones are sorted by start offset
+      if (!region.isValid()) continue;
+      if (region.getStartOffset() >= offset) break;
       if (!region.isExpanded() && contains(region, offset)) {
         allCollapsed.add(region);
       }
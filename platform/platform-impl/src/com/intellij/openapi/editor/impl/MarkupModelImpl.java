@@ -32,6 +32,7 @@ import com.intellij.openapi.editor.ex.DisposableIterator;
 import com.intellij.openapi.editor.ex.MarkupModelEx;
 import com.intellij.openapi.editor.ex.RangeHighlighterEx;
 import com.intellij.openapi.editor.ex.SweepProcessor;
+import com.intellij.openapi.editor.impl.event.BulkAwareMarkupModelListener;
 import com.intellij.openapi.editor.impl.event.MarkupModelListener;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
@@ -55,6 +56,7 @@ public class MarkupModelImpl extends UserDataHolderBase implements MarkupModelEx
   private RangeHighlighter[] myCachedHighlighters;
   private final List<MarkupModelListener> myListeners = ContainerUtil.createEmptyCOWList();
   private final RangeHighlighterTree myHighlighterTree;
+  private int myBatchDepth;
 
   MarkupModelImpl(@NotNull DocumentImpl document) {
     ApplicationManager.getApplication().assertIsDispatchThread();
@@ -143,6 +145,22 @@ public class MarkupModelImpl extends UserDataHolderBase implements MarkupModelEx
     return highlighter;
   }
 
+  @Override
+  public void runInBatchMode(@NotNull Runnable action) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    if (myBatchDepth++ == 0) {
+      fireBatchStarted();
+    }
+    try {
+      action.run();
+    }
+    finally {
+      if (--myBatchDepth == 0) {
+        fireBatchFinished();
+      }
+    }
+  }
+
   @Override
   public void changeAttributesInBatch(@NotNull RangeHighlighterEx highlighter, @NotNull Consumer<RangeHighlighterEx> changeAttributesAction) {
     ApplicationManager.getApplication().assertIsDispatchThread();
@@ -228,6 +246,22 @@ public class MarkupModelImpl extends UserDataHolderBase implements MarkupModelEx
     }
   }
 
+  private void fireBatchStarted() {
+    for (MarkupModelListener listener : myListeners) {
+      if (listener instanceof BulkAwareMarkupModelListener) {
+        ((BulkAwareMarkupModelListener)listener).batchStarted();
+      }
+    }
+  }
+
+  private void fireBatchFinished() {
+    for (MarkupModelListener listener : myListeners) {
+      if (listener instanceof BulkAwareMarkupModelListener) {
+        ((BulkAwareMarkupModelListener)listener).batchFinished();
+      }
+    }
+  }
+
   void fireBeforeRemoved(RangeHighlighterEx segmentHighlighter) {
     for (MarkupModelListener listener : myListeners) {
       listener.beforeRemoved(segmentHighlighter);
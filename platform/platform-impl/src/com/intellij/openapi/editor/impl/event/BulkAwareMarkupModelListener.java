@@ -0,0 +1,27 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl.event;
+
+/**
+ * Markup model listener which is additionally notified about start and finish of the highlighters batch update
+ * (see {@link com.intellij.openapi.editor.ex.MarkupModelEx#runInBatchMode(Runnable)}).
+ * Per-highlighter events are still fired inside the batch, so the expensive reaction to them (repaint, gutter size update etc.)
+ * may be postponed until {@link #batchFinished()}.
+ */
+public interface BulkAwareMarkupModelListener extends MarkupModelListener {
+  void batchStarted();
+  void batchFinished();
+}
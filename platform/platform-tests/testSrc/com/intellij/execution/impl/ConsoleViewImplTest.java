@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.impl;
+
+import com.intellij.execution.filters.Filter;
+import com.intellij.execution.filters.HyperlinkInfo;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.Result;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConsoleViewImplTest extends LightPlatformTestCase {
+  private static final HyperlinkInfo LINK = new HyperlinkInfo() {
+    @Override
+    public void navigate(Project project) {
+    }
+  };
+
+  public void testFloodedOutputIsFilteredInBackground() throws Exception {
+    final AtomicBoolean filteredInEdt = new AtomicBoolean();
+    final ConsoleViewImpl console = new ConsoleViewImpl(getProject(), false);
+    try {
+      console.addMessageFilter(new Filter() {
+        @Override
+        public Result applyFilter(String line, int entireLength) {
+          if (ApplicationManager.getApplication().isDispatchThread()) {
+            filteredInEdt.set(true);
+          }
+          if (!line.startsWith("link")) return null;
+          int start = entireLength - line.length();
+          return new Result(start, start + line.trim().length(), LINK);
+        }
+      });
+      console.getComponent();
+
+      // several times more output than the cyclic buffer holds
+      int lineCount = 0;
+      int outputLength = 0;
+      for (int chunk = 0; chunk < 200; chunk++) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++, lineCount++) {
+          text.append(lineCount % 10 == 0 ? "link " : "text ").append(lineCount).append('\n');
+        }
+        console.print(text.toString(), ConsoleViewContentType.NORMAL_OUTPUT);
+        outputLength += text.length();
+        flush(console);
+      }
+      console.print("link last\n", ConsoleViewContentType.NORMAL_OUTPUT);
+      flush(console);
+
+      Document document = console.getEditor().getDocument();
+      assertTrue(document.getTextLength() < outputLength);
+      int lastLinkStart = document.getText().lastIndexOf("link last");
+      assertTrue(lastLinkStart > 0);
+
+      long deadline = System.currentTimeMillis() + 30000;
+      while (!isHyperlinkAt(console, lastLinkStart)) {
+        assertTrue("filters haven't finished", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+        UIUtil.dispatchAllInvocationEvents();
+      }
+
+      assertFalse(filteredInEdt.get());
+      Set<RangeHighlighter> hyperlinks = console.getHyperlinks().getHyperlinks().keySet();
+      assertTrue(hyperlinks.size() > 1);
+      for (RangeHighlighter hyperlink : hyperlinks) {
+        if (!hyperlink.isValid()) continue;
+        String text = document.getText().substring(hyperlink.getStartOffset(), hyperlink.getEndOffset());
+        assertTrue(text, text.startsWith("link "));
+      }
+    }
+    finally {
+      Disposer.dispose(console);
+    }
+  }
+
+  private static boolean isHyperlinkAt(ConsoleViewImpl console, int offset) {
+    for (RangeHighlighter hyperlink : console.getHyperlinks().getHyperlinks().keySet()) {
+      if (hyperlink.isValid() && hyperlink.getStartOffset() == offset) return true;
+    }
+    return false;
+  }
+
+  private static void flush(final ConsoleViewImpl console) {
+    new WriteAction() {
+      @Override
+      protected void run(Result result) throws Throwable {
+        console.flushDeferredText();
+      }
+    }.execute();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.ide.util.gotoByName;
+
+import com.intellij.ide.util.gotoByName.DefaultChooseByNameItemProvider.MatchedNames;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.intellij.util.ArrayUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MatchedNamesTest extends TestCase {
+  private static final String[] NAMES = {
+    "NameUtil", "NameUtilTest", "nameUtil", "name_util_test", "NAME_UTIL", "NameUtil2", "Names", "AName", "XNameUtil", "getName", "renamer",
+    "Foo", "foo", "FooBar", "fooBar", "FooBarBaz", "Foo_Bar", "FooFoo", "BarFoo", "barFoo", "AFooBar", "Bar", "Baz", "bar_foo",
+    "ChooseByName", "ChooseByNameBase", "ChooseByNameModel", "DefaultChooseByNameItemProvider", "Choose", "chooser"
+  };
+
+  public void testTypedCharacters() {
+    assertNarrowed("N", "Na", "NaU", "NaUt", "NaUtT");
+    assertNarrowed("n", "na", "nam", "name", "nameu", "nameut");
+    assertNarrowed("c", "cb", "cbn", "cbnb");
+    assertNarrowed("c", "ch", "cho", "choose");
+    assertNarrowed("C", "CB", "CBN", "CBNM");
+  }
+
+  public void testLowerCasePatternNarrowedByMixedCase() {
+    assertNarrowed("f", "fo", "foo", "fooB", "fooBa", "fooBaz");
+    assertNarrowed("b", "ba", "bar", "barF");
+  }
+
+  public void testWildcard() {
+    assertNarrowed("*", "*b*", "*ba*", "*bar*");
+    assertNarrowed("N*", "NU*", "NUT*");
+    assertNarrowed("N*", "Na*", "Nam*");
+    assertNarrowed("f*b", "f*ba", "f*baz");
+
+    // the trailing wildcard is only ignored if both patterns end with it
+    assertNotNarrowed("N*", "NU");
+    assertNotNarrowed("N", "N*");
+    assertNotNarrowed("Na*", "Na*U");
+  }
+
+  public void testSearchAnywherePattern() {
+    // the pattern is wrapped in wildcards in the "search anywhere" mode
+    assertNarrowed("*n*", "*na*", "*nam*", "*name*", "*nameU*", "*nameUt*");
+    assertNarrowed("*f*", "*fo*", "*foo*", "*fooB*");
+    assertNarrowed("*b*", "*ba*", "*bar*", "*barF*");
+
+    assertNotNarrowed("*foo*", "*foo");
+    assertNotNarrowed("*foo", "*fooB*");
+  }
+
+  public void testSpaceSuffix() {
+    // a space separates words of the pattern, the names matched by a pattern containing it aren't reused
+    assertNarrowed("Foo", "Foo ");
+    assertNarrowed("Bar", "Bar ");
+    assertNotNarrowed("Foo ", "Foo B");
+    assertNotNarrowed("Foo ", "Foo Ba");
+    assertNotNarrowed("name ", "name u");
+  }
+
+  public void testOtherNames() {
+    MatchedNames matched = match(NAMES, "Na");
+    assertTrue(matched.isNarrowedBy(NAMES, "NaU"));
+    assertFalse(matched.isNarrowedBy(NAMES.clone(), "NaU"));
+    assertFalse(matched.isNarrowedBy(NAMES, "N"));
+    assertFalse(matched.isNarrowedBy(NAMES, "Fo"));
+  }
+
+  private static void assertNarrowed(String... patterns) {
+    for (int i = 0; i < patterns.length; i++) {
+      String[] matchedNames = ArrayUtil.toStringArray(filter(NAMES, patterns[i]));
+      MatchedNames matched = new MatchedNames(NAMES, patterns[i], matchedNames);
+      for (int j = i + 1; j < patterns.length; j++) {
+        String pattern = patterns[j];
+        assertTrue(patterns[i] + " -> " + pattern, matched.isNarrowedBy(NAMES, pattern));
+        // the names matching a longer pattern are the ones among the names matching its prefix
+        assertEquals(patterns[i] + " -> " + pattern, filter(NAMES, pattern), filter(matchedNames, pattern));
+      }
+    }
+  }
+
+  private static void assertNotNarrowed(String previous, String pattern) {
+    assertFalse(previous + " -> " + pattern, match(NAMES, previous).isNarrowedBy(NAMES, pattern));
+  }
+
+  private static MatchedNames match(String[] names, String pattern) {
+    return new MatchedNames(names, pattern, ArrayUtil.toStringArray(filter(names, pattern)));
+  }
+
+  private static List<String> filter(String[] names, String pattern) {
+    NameUtil.Matcher matcher = DefaultChooseByNameItemProvider.buildPatternMatcher(pattern);
+    List<String> result = new ArrayList<String>();
+    for (String name : names) {
+      if (matcher.matches(name)) {
+        result.add(name);
+      }
+    }
+    return result;
+  }
+}
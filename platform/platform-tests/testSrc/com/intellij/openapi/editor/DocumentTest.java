@@ -6,6 +6,8 @@ import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.impl.DocumentImpl;
 import com.intellij.testFramework.LightPlatformTestCase;
 
+import java.util.Random;
+
 public class DocumentTest extends LightPlatformTestCase {
   public void testCorrectlyAddingAndRemovingListeners() throws Exception {
     new WriteCommandAction.Simple(getProject()) {
@@ -56,4 +58,35 @@ public class DocumentTest extends LightPlatformTestCase {
       }
     }.execute().throwException();
   }
+
+  public void testLineMappingAfterSeriesOfMultilineChanges() throws Exception {
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+          text.append(i % 3 == 0 ? "\n" : "ab");
+        }
+        final Document doc = new DocumentImpl(text);
+        final String[] fragments = {"a", "\n", "xy", "q\nq\n", "\n\n\n", ""};
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+          int start = random.nextInt(doc.getTextLength() + 1);
+          int end = Math.min(doc.getTextLength(), start + random.nextInt(30));
+          doc.replaceString(start, end, fragments[random.nextInt(fragments.length)] + fragments[random.nextInt(fragments.length)]);
+          if (doc.getTextLength() == 0) continue;
+
+          Document expected = new DocumentImpl(doc.getCharsSequence());
+          assertEquals(expected.getLineCount(), doc.getLineCount());
+          for (int line = 0; line < expected.getLineCount(); line++) {
+            assertEquals(expected.getLineStartOffset(line), doc.getLineStartOffset(line));
+            assertEquals(expected.getLineEndOffset(line), doc.getLineEndOffset(line));
+          }
+          for (int offset = 0; offset <= doc.getTextLength(); offset += 7) {
+            assertEquals(expected.getLineNumber(offset), doc.getLineNumber(offset));
+          }
+        }
+      }
+    }.execute().throwException();
+  }
 }
@@ -2,6 +2,7 @@ package com.intellij.openapi.editor;
 
 import com.intellij.openapi.editor.ex.FoldingModelEx;
 import com.intellij.openapi.editor.impl.DocumentImpl;
+import com.intellij.openapi.editor.impl.FoldingModelImpl;
 import com.intellij.openapi.util.Ref;
 import com.intellij.testFramework.LightPlatformTestCase;
 import org.jetbrains.annotations.NonNls;
@@ -146,4 +147,39 @@ public class FoldingTest extends LightPlatformTestCase {
       EditorFactory.getInstance().releaseEditor(editor);
     }
   }
+
+  public void testNestedRegionsInsideCollapsedAreNotVisible() throws Exception {
+    DocumentImpl doc = new DocumentImpl("0123456789\n123456789\n23456789\n3456789");
+    Editor editor = EditorFactory.getInstance().createEditor(doc);
+    try {
+      final FoldingModelImpl model = (FoldingModelImpl)editor.getFoldingModel();
+      final FoldRegion[] regions = new FoldRegion[4];
+      model.runBatchFoldingOperation(new Runnable() {
+        @Override
+        public void run() {
+          regions[0] = model.addFoldRegion(0, 15, "...");
+          regions[1] = model.addFoldRegion(2, 5, "...");
+          regions[2] = model.addFoldRegion(20, 30, "...");
+          regions[3] = model.addFoldRegion(22, 25, "...");
+          regions[0].setExpanded(false);
+          regions[3].setExpanded(false);
+        }
+      });
+
+      FoldRegion[] visible = model.fetchVisible();
+      assertEquals(3, visible.length);
+      assertSame(regions[2], visible[0]);
+      assertSame(regions[3], visible[1]);
+      assertSame(regions[0], visible[2]);
+
+      FoldRegion[] topLevel = model.fetchTopLevel();
+      assertNotNull(topLevel);
+      assertEquals(2, topLevel.length);
+      assertSame(regions[0], topLevel[0]);
+      assertSame(regions[3], topLevel[1]);
+    }
+    finally {
+      EditorFactory.getInstance().releaseEditor(editor);
+    }
+  }
 }
@@ -9,10 +9,13 @@ import com.intellij.openapi.command.undo.UndoManager;
 import com.intellij.openapi.editor.event.DocumentAdapter;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.ex.DocumentEx;
+import com.intellij.openapi.editor.ex.MarkupModelEx;
+import com.intellij.openapi.editor.ex.RangeHighlighterEx;
 import com.intellij.openapi.editor.ex.RangeMarkerEx;
 import com.intellij.openapi.editor.impl.DocumentImpl;
 import com.intellij.openapi.editor.impl.DocumentMarkupModel;
 import com.intellij.openapi.editor.impl.RedBlackTree;
+import com.intellij.openapi.editor.impl.event.BulkAwareMarkupModelListener;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.util.Pair;
@@ -26,6 +29,7 @@ import com.intellij.testFramework.LeakHunter;
 import com.intellij.testFramework.LightPlatformTestCase;
 import com.intellij.testFramework.Timings;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -1045,4 +1049,52 @@ public class RangeMarkerTest extends LightPlatformTestCase {
       EditorFactory.getInstance().releaseEditor(editor);
     }
   }
+
+  public void testMarkupModelBatchMode() throws Exception {
+    Document document = EditorFactory.getInstance().createDocument("[xxxxxxxxxxxxxx]");
+    final MarkupModelEx markupModel = (MarkupModelEx)DocumentMarkupModel.forDocument(document, ourProject, true);
+    final StringBuilder events = new StringBuilder();
+    markupModel.addMarkupModelListener(getTestRootDisposable(), new BulkAwareMarkupModelListener() {
+      @Override
+      public void batchStarted() {
+        events.append("started ");
+      }
+
+      @Override
+      public void batchFinished() {
+        events.append("finished ");
+      }
+
+      @Override
+      public void afterAdded(@NotNull RangeHighlighterEx highlighter) {
+        events.append("added ");
+      }
+
+      @Override
+      public void beforeRemoved(@NotNull RangeHighlighterEx highlighter) {
+        events.append("removed ");
+      }
+
+      @Override
+      public void attributesChanged(@NotNull RangeHighlighterEx highlighter) {
+      }
+    });
+
+    markupModel.runInBatchMode(new Runnable() {
+      @Override
+      public void run() {
+        markupModel.addRangeHighlighter(1, 6, 0, null, HighlighterTargetArea.EXACT_RANGE);
+        markupModel.runInBatchMode(new Runnable() {
+          @Override
+          public void run() {
+            markupModel.addRangeHighlighter(2, 7, 0, null, HighlighterTargetArea.EXACT_RANGE).dispose();
+          }
+        });
+      }
+    });
+
+    assertEquals("started added added removed finished ", events.toString());
+    assertEquals(1, markupModel.getAllHighlighters().length);
+    markupModel.removeAllHighlighters();
+  }
 }
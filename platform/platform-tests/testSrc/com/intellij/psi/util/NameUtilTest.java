@@ -338,4 +338,28 @@ public class NameUtilTest extends UsefulTestCase {
       }
     }).cpuBound().assertTiming();
   }
+
+  public void testMatchingDegreePerformance() {
+    @NonNls final String[] names = {"PsiClassImplementation", "ThisIsAQuiteLongNameWithParentheses", "LOG_ERROR_LEVEL", "findModuleForPsiElement",
+      "DefaultChooseByNameItemProvider", "getPsiElementFactory"};
+    final List<NameUtil.MinusculeMatcher> matchers = new ArrayList<NameUtil.MinusculeMatcher>();
+    for (String s : CollectionFactory.ar("PCI", "psiCl", "*Name", "LOG_E", "fMFPE", "DCBNIP", "getPEF")) {
+      matchers.add(new NameUtil.MinusculeMatcher(s, NameUtil.MatchingCaseSensitivity.NONE));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Matching degree is slow", 1500, new ThrowableRunnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          for (NameUtil.MinusculeMatcher matcher : matchers) {
+            for (String name : names) {
+              if (matcher.matches(name)) {
+                assertTrue(matcher.matchingDegree(name) > Integer.MIN_VALUE);
+              }
+            }
+          }
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
 }
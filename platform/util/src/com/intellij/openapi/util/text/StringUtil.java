@@ -207,6 +207,17 @@ public class StringUtil {
     return -1;
   }
 
+  public static int indexOfIgnoreCase(@NotNull String where, char what, int fromIndex) {
+    int sourceCount = where.length();
+    for (int i = Math.max(fromIndex, 0); i < sourceCount; i++) {
+      if (charsEqualIgnoreCase(where.charAt(i), what)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
   public static boolean containsIgnoreCase(@NotNull String where, @NotNull String what) {
     return indexOfIgnoreCase(where, what, 0) >= 0;
   }
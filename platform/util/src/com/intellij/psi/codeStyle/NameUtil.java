@@ -26,7 +26,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class NameUtil {
@@ -387,6 +386,7 @@ public class NameUtil {
     };
 
     private final char[] myPattern;
+    private final int myPatternCapitals;
     private final MatchingCaseSensitivity myOptions;
     private final Function<Character, Boolean> mySeparatorFunction;
 
@@ -397,11 +397,15 @@ public class NameUtil {
     public MinusculeMatcher(String pattern, MatchingCaseSensitivity options, Function<Character, Boolean> separatorFunction) {
       myOptions = options;
       myPattern = StringUtil.trimEnd(pattern, "* ").replaceAll(":", "\\*:").toCharArray();
+      myPatternCapitals = countCapitals(myPattern, 0, myPattern.length);
       mySeparatorFunction = separatorFunction;
     }
 
+    /**
+     * @param fragments whether the matched fragments are needed, otherwise an empty list is returned for any match not to allocate them
+     */
     @Nullable
-    private FList<TextRange> matchName(String name, int patternIndex, int nameIndex) {
+    private FList<TextRange> matchName(String name, int patternIndex, int nameIndex, boolean fragments) {
       if (patternIndex == myPattern.length) {
         return FList.emptyList();
       }
@@ -410,10 +414,10 @@ public class NameUtil {
       }
 
       if ('.' == myPattern[patternIndex] && name.charAt(nameIndex) != '.') {
-        return skipChars(name, patternIndex, nameIndex, false);
+        return skipChars(name, patternIndex, nameIndex, false, fragments);
       }
       if ('*' == myPattern[patternIndex]) {
-        return skipChars(name, patternIndex, nameIndex, true);
+        return skipChars(name, patternIndex, nameIndex, true, fragments);
       }
 
       if (patternIndex == 0 && myOptions != MatchingCaseSensitivity.NONE && name.charAt(nameIndex) != myPattern[0]) {
@@ -421,12 +425,12 @@ public class NameUtil {
       }
 
       if (isWordSeparator(name.charAt(nameIndex))) {
-        return skipSeparators(name, patternIndex, nameIndex);
+        return skipSeparators(name, patternIndex, nameIndex, fragments);
       }
 
       if (StringUtil.toLowerCase(name.charAt(nameIndex)) != StringUtil.toLowerCase(myPattern[patternIndex])) {
         if (Character.isDigit(name.charAt(nameIndex)) || (name.charAt(nameIndex) == '.' && name.indexOf('.', nameIndex + 1) > 0)) {
-          return matchName(name, patternIndex, nameIndex + 1);
+          return matchName(name, patternIndex, nameIndex + 1, fragments);
         }
         return null;
       }
@@ -443,7 +447,7 @@ public class NameUtil {
       while (true) {
         if (patternIndex + i == myPattern.length) {
           //end of pattern reached, the last word matches
-          return FList.<TextRange>emptyList().prepend(TextRange.from(nameIndex, i));
+          return prependRange(FList.<TextRange>emptyList(), nameIndex, i, fragments);
         }
         if (i + nameIndex == nextStart) {
           //whole word match
@@ -476,7 +480,7 @@ public class NameUtil {
           char last = myPattern[patternIndex + i];
           if (' ' == last && (i == 1 && isWordStart(myPattern[patternIndex]) || i + nameIndex == name.length()) ||
               '*' == last) {
-            return FList.<TextRange>emptyList().prepend(TextRange.from(nameIndex, i));
+            return prependRange(FList.<TextRange>emptyList(), nameIndex, i, fragments);
           }
         }
 
@@ -484,16 +488,17 @@ public class NameUtil {
       }
 
       while (i > 0) {
-        FList<TextRange> ranges = matchName(name, patternIndex + i, nextStart);
+        FList<TextRange> ranges = matchName(name, patternIndex + i, nextStart, fragments);
         if (ranges != null) {
-          return prependRange(ranges, nameIndex, i);
+          return prependRange(ranges, nameIndex, i, fragments);
         }
         i--;
       }
       return null;
     }
 
-    private static FList<TextRange> prependRange(FList<TextRange> ranges, int from, int length) {
+    private static FList<TextRange> prependRange(FList<TextRange> ranges, int from, int length, boolean fragments) {
+      if (!fragments) return ranges;
       TextRange head = ranges.getHead();
       if (head != null && head.getStartOffset() == from + length) {
         return ranges.getTail().prepend(new TextRange(from, head.getEndOffset()));
@@ -506,7 +511,7 @@ public class NameUtil {
     }
 
     @Nullable
-    private FList<TextRange> skipSeparators(String name, int patternIndex, int nameIndex) {
+    private FList<TextRange> skipSeparators(String name, int patternIndex, int nameIndex, boolean fragments) {
       int nextStart = NameUtil.nextWord(name, nameIndex);
       assert nextStart - nameIndex == 1 : "'" + name + "'" + nameIndex + " " + nextStart;
       char p = myPattern[patternIndex];
@@ -517,19 +522,19 @@ public class NameUtil {
           return null;
         }
 
-        final FList<TextRange> ranges = matchName(name, patternIndex + 1, nextStart);
+        final FList<TextRange> ranges = matchName(name, patternIndex + 1, nextStart, fragments);
         if (ranges != null) {
-          return prependRange(ranges, nameIndex, 1);
+          return prependRange(ranges, nameIndex, 1, fragments);
         }
 
         return null;
       }
 
-      return matchName(name, patternIndex, nextStart);
+      return matchName(name, patternIndex, nextStart, fragments);
     }
 
     @Nullable
-    private FList<TextRange> skipChars(String name, int patternIndex, int nameIndex, boolean maySkipNextChar) {
+    private FList<TextRange> skipChars(String name, int patternIndex, int nameIndex, boolean maySkipNextChar, boolean fragments) {
       while ('*' == myPattern[patternIndex]) {
         patternIndex++;
         if (patternIndex == myPattern.length) {
@@ -537,7 +542,7 @@ public class NameUtil {
         }
       }
 
-      String nextChar = String.valueOf(myPattern[patternIndex]);
+      char nextChar = myPattern[patternIndex];
       boolean upper = Character.isUpperCase(myPattern[patternIndex]);
 
       int fromIndex = nameIndex;
@@ -551,7 +556,7 @@ public class NameUtil {
           continue;
         }
 
-        FList<TextRange> ranges = matchName(name, patternIndex, next);
+        FList<TextRange> ranges = matchName(name, patternIndex, next, fragments);
         if (ranges != null) {
           return ranges;
         }
@@ -570,11 +575,11 @@ public class NameUtil {
       int matchingCaps = 0;
       int fragmentCount = 0;
       for (TextRange range : iterable) {
-        matchingCaps += StringUtil.capitalsOnly(name.substring(range.getStartOffset(), range.getEndOffset())).length();
+        matchingCaps += countCapitals(name, range.getStartOffset(), range.getEndOffset());
         fragmentCount++;
       }
 
-      int patternCaps = StringUtil.capitalsOnly(new String(myPattern)).length();
+      int patternCaps = myPatternCapitals;
 
       int commonStart = 0;
       while (commonStart < name.length() && commonStart < myPattern.length && name.charAt(commonStart) == myPattern[commonStart]) {
@@ -586,16 +591,37 @@ public class NameUtil {
 
     @Override
     public boolean matches(String name) {
-      return matchingFragments(name) != null;
+      return matchName(name, false) != null;
     }
 
     @Nullable
     public Iterable<TextRange> matchingFragments(String name) {
+      return matchName(name, true);
+    }
+
+    @Nullable
+    private FList<TextRange> matchName(String name, boolean fragments) {
       if (name.isEmpty()) {
-        return myPattern.length == 0 ? Collections.<TextRange>emptyList() : null;
+        return myPattern.length == 0 ? FList.<TextRange>emptyList() : null;
       }
 
-      return matchName(name, 0, 0);
+      return matchName(name, 0, 0, fragments);
+    }
+
+    private static int countCapitals(char[] chars, int start, int end) {
+      int count = 0;
+      for (int i = start; i < end; i++) {
+        if (Character.isUpperCase(chars[i])) count++;
+      }
+      return count;
+    }
+
+    private static int countCapitals(String s, int start, int end) {
+      int count = 0;
+      for (int i = start; i < end; i++) {
+        if (Character.isUpperCase(s.charAt(i))) count++;
+      }
+      return count;
     }
   }
 }
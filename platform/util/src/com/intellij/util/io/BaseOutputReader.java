@@ -28,11 +28,13 @@ import java.util.concurrent.Future;
  */
 public abstract class BaseOutputReader {
   private static final Logger LOG = Logger.getInstance("#com.intellij.util.io.BaseOutputReader");
+  private static final int MAX_SLEEP_TIME = 5;
 
   protected final Reader myReader;
   protected volatile boolean isStopped = false;
 
   private final char[] myBuffer = new char[8192];
+  private final StringBuilder myToken = new StringBuilder();
   private boolean skipLF = false;
 
   private Future<?> myFinishedFuture = null;
@@ -55,15 +57,28 @@ public abstract class BaseOutputReader {
 
   protected void doRun() {
     try {
+      int idleIterations = 0;
       while (true) {
+        // output written before the reader was stopped must still be read, so the flag is checked before reading
+        boolean stopped = isStopped;
         boolean read = readAvailable();
 
-        if (isStopped) {
+        if (!read) {
+          onBufferExhausted();
+        }
+
+        if (stopped) {
           myReader.close();
           break;
         }
 
-        Thread.sleep(read ? 1 : 5); // give other threads a chance
+        if (read) {
+          // the process is producing output - poll again without delay until it's exhausted
+          idleIterations = 0;
+          continue;
+        }
+        idleIterations++;
+        Thread.sleep(getSleepTime(idleIterations)); // give other threads a chance
       }
     }
     catch (InterruptedException ignore) {
@@ -76,9 +91,24 @@ public abstract class BaseOutputReader {
     }
   }
 
+  /**
+   * Polling delay grows while the stream stays idle, so that processes which don't write anything don't keep their reader threads
+   * busy, and the delay is reset as soon as any output is read. It never exceeds the fixed 5 ms delay readers used to sleep between
+   * polls, so that the latency of the first output after a pause stays the same.
+   */
+  static int getSleepTime(int idleIterations) {
+    return Math.min(idleIterations, MAX_SLEEP_TIME);
+  }
+
+  /**
+   * Is called every time when all currently available output has been read.
+   */
+  protected void onBufferExhausted() {
+  }
+
   protected synchronized boolean readAvailable() throws IOException {
     char[] buffer = myBuffer;
-    StringBuilder token = new StringBuilder();
+    StringBuilder token = myToken;
 
     boolean read = false;
     while (myReader.ready()) {
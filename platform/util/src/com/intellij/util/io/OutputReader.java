@@ -15,15 +15,12 @@
  */
 package com.intellij.util.io;
 
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.concurrency.Semaphore;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
 import java.io.Reader;
 
 public abstract class OutputReader extends BaseOutputReader {
-  private static final Logger LOG = Logger.getInstance("#com.intellij.util.io.OutputReader");
 
   private final Semaphore myReadFullySemaphore = new Semaphore();
 
@@ -33,31 +30,9 @@ public abstract class OutputReader extends BaseOutputReader {
     start();
   }
 
-  protected void doRun() {
-    try {
-      while (true) {
-        boolean read = readAvailable();
-
-        if (!read) {
-          myReadFullySemaphore.up();
-        }
-
-        if (isStopped) {
-          myReader.close();
-          break;
-        }
-
-        Thread.sleep(read ? 1 : 5); // give other threads a chance
-      }
-    }
-    catch (InterruptedException ignore) {
-    }
-    catch (IOException e) {
-      LOG.info(e);
-    }
-    catch (Exception e) {
-      LOG.error(e);
-    }
+  @Override
+  protected void onBufferExhausted() {
+    myReadFullySemaphore.up();
   }
 
   public void readFully() throws InterruptedException {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class BaseOutputReaderTest extends TestCase {
+  private ExecutorService myExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myExecutor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testSleepTimeDoesNotExceedOldPollingDelay() {
+    for (int i = 1; i < 1000; i++) {
+      int sleepTime = BaseOutputReader.getSleepTime(i);
+      assertTrue(sleepTime > 0);
+      assertTrue(String.valueOf(sleepTime), sleepTime <= 5);
+    }
+  }
+
+  public void testOutputAfterPauseIsReadPromptly() throws Exception {
+    PipedWriter writer = new PipedWriter();
+    TestReader reader = new TestReader(new PipedReader(writer));
+    reader.start();
+
+    for (int i = 0; i < 10; i++) {
+      // let the reader reach its longest polling delay
+      Thread.sleep(100);
+      long start = System.nanoTime();
+      writer.write("line" + i + "\n");
+      writer.flush();
+      assertEquals("line" + i + "\n", reader.myTexts.poll(10, TimeUnit.SECONDS));
+      long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue("latency: " + latency + " ms", latency < 100);
+    }
+
+    reader.stop();
+    reader.waitFor();
+  }
+
+  public void testOutputIsDrainedAtEndOfStream() throws Exception {
+    final StringBuilder output = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      output.append("line").append(i).append('\n');
+    }
+
+    // the whole output becomes available at the moment the reader is stopped, like it happens when a process terminates
+    final TestReader[] outputReader = new TestReader[1];
+    Reader reader = new Reader() {
+      private Reader myDelegate;
+
+      @Override
+      public boolean ready() throws IOException {
+        if (myDelegate == null) {
+          myDelegate = new StringReader(output.toString());
+          outputReader[0].stop();
+          return false;
+        }
+        return myDelegate.ready();
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        return myDelegate.read(cbuf, off, len);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    outputReader[0] = new TestReader(reader);
+    outputReader[0].start();
+    outputReader[0].waitFor();
+
+    StringBuilder text = new StringBuilder();
+    for (String s : outputReader[0].myTexts) {
+      text.append(s);
+    }
+    assertEquals(output.toString(), text.toString());
+  }
+
+  private class TestReader extends BaseOutputReader {
+    private final LinkedBlockingQueue<String> myTexts = new LinkedBlockingQueue<String>();
+
+    public TestReader(@NotNull Reader reader) {
+      super(reader);
+    }
+
+    @Override
+    protected Future<?> executeOnPooledThread(Runnable runnable) {
+      return myExecutor.submit(runnable);
+    }
+
+    @Override
+    protected void onTextAvailable(@NotNull String text) {
+      myTexts.add(text);
+    }
+  }
+}
@@ -36,6 +36,11 @@ public class CStyleArrayDeclarationInspection extends BaseInspection {
       "c.style.array.declaration.display.name");
   }
 
+  @Override
+  public boolean isElementLocal() {
+    return true;
+  }
+
   @NotNull
   protected String buildErrorString(Object... infos) {
     return InspectionGadgetsBundle.message(
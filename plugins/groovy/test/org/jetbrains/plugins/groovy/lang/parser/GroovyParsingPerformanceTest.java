@@ -0,0 +1,52 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.plugins.groovy.lang.parser;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ThrowableRunnable;
+import org.jetbrains.plugins.groovy.GroovyFileType;
+
+/**
+ * Full file parsing throughput, see also com.intellij.lang.ParsingPerformanceTest for Java and XML.
+ */
+public class GroovyParsingPerformanceTest extends LightCodeInsightFixtureTestCase {
+  public void testParsing() {
+    StringBuilder sb = new StringBuilder("package foo\n\nimport java.util.concurrent.*\n\n");
+    for (int i = 0; i < 500; i++) {
+      sb.append("class Foo").append(i).append(" extends Bar implements Serializable {\n");
+      sb.append("  def field").append(i).append(" = [a: 1, b: \"str${i}\", c: [1, 2, 3]]\n");
+      sb.append("  List<String> method").append(i).append("(int x, def y = null) {\n");
+      sb.append("    def result = (0..x).collect { it * 2 }.findAll { it % 3 == 0 }\n");
+      sb.append("    if (y instanceof Map && y.size() > 0) { println \"${y.keySet()} $x\" }\n");
+      sb.append("    for (item in result) { x += item as int }\n");
+      sb.append("    return result*.toString()\n");
+      sb.append("  }\n}\n\n");
+    }
+    final String text = sb.toString();
+    PlatformTestUtil.startPerformanceTest("Parsing Groovy of size " + text.length(), 2000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        for (int i = 0; i < 5; i++) {
+          PsiFile file = PsiFileFactory.getInstance(getProject()).createFileFromText("a.groovy", GroovyFileType.GROOVY_FILE_TYPE, text);
+          assertNotNull(file.getNode().getFirstChildNode());
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+}